@@ -0,0 +1,45 @@
+package com.tecnocampus.examsimulation.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the benchmarks once per thread count and writes one JSON result file per run, so results
+ * can be compared between releases.
+ *
+ * System properties: {@code jmh.include} (benchmark regex), {@code jmh.threads} and
+ * {@code jmh.tableSize} (comma separated), {@code jmh.prof} (comma separated profilers, such as
+ * {@code gc} for bytes allocated per operation), {@code jmh.output} (result directory).
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = System.getProperty("jmh.include", ".*");
+        String[] threadCounts = System.getProperty("jmh.threads", "1").split(",");
+        String[] tableSizes = System.getProperty("jmh.tableSize", "1000").split(",");
+        String[] profilers = System.getProperty("jmh.prof", "").split(",");
+        File output = new File(System.getProperty("jmh.output", "target/jmh"));
+        output.mkdirs();
+
+        for (String threads : threadCounts) {
+            int t = Integer.parseInt(threads.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(t)
+                    .param("tableSize", tableSizes)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(output, "jmh-result-t" + t + ".json").getPath());
+            for (String profiler : profilers) {
+                if (!profiler.isBlank()) {
+                    options.addProfiler(profiler.trim());
+                }
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.tecnocampus.examsimulation.benchmark;
+
+import com.tecnocampus.examsimulation.ExamSimulationApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Load test of the cluster mode with 1, 2 and 4 nodes in this JVM, each with its own in-memory
+ * database. {@code load.clients} concurrent clients send {@code load.requests} requests to random
+ * nodes: kingdom reads, investments and attacks between random kingdoms, so most requests are
+ * forwarded and most attacks cross nodes. Throughput and p50/p99 latency are printed and written
+ * to {@code jmh.output}/cluster.json. All nodes share the cores of one machine, so this measures
+ * the cost of routing and of two-party attacks rather than the capacity gained by adding hosts.
+ *
+ * Run with: mvn -Pjmh -DskipTests test-compile exec:exec -Dbenchmark.main=com.tecnocampus.examsimulation.benchmark.ClusterLoadTest
+ */
+public class ClusterLoadTest {
+    private static final int KINGDOMS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = Integer.getInteger("load.clients", 1_000);
+        int requests = Integer.getInteger("load.requests", 50_000);
+        File output = new File(System.getProperty("jmh.output", "target/jmh"));
+        output.mkdirs();
+
+        List<String> results = new ArrayList<>();
+        for (int nodes : new int[]{1, 2, 4}) {
+            results.add(run(nodes, clients, requests));
+        }
+        Files.writeString(new File(output, "cluster.json").toPath(), "[" + String.join(",", results) + "]");
+    }
+
+    private static String run(int nodeCount, int clients, int requests) throws Exception {
+        List<String> nodes = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                nodes.add("http://localhost:" + socket.getLocalPort());
+            }
+        }
+        List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+        try {
+            for (int i = 0; i < nodeCount; i++) {
+                contexts.add(new SpringApplicationBuilder(ExamSimulationApplication.class)
+                        .run("--server.port=" + URI.create(nodes.get(i)).getPort(),
+                                "--spring.datasource.url=jdbc:h2:mem:cluster-" + nodeCount + "-" + i + ";DB_CLOSE_DELAY=-1",
+                                "--kingdom.cluster.enabled=true",
+                                "--kingdom.cluster.nodes=" + String.join(",", nodes),
+                                "--kingdom.cluster.self=" + nodes.get(i),
+                                "--kingdom.cluster.token=load",
+                                "--spring.threads.virtual.enabled=true",
+                                "--logging.level.root=WARN"));
+            }
+            HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+
+            String[] ids = new String[KINGDOMS];
+            for (int i = 0; i < KINGDOMS; i++) {
+                String body = send(client, HttpRequest.newBuilder(URI.create(nodes.get(i % nodeCount) + "/kingdoms"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"gold\":60,\"citizens\":10,\"food\":10}")).build());
+                ids[i] = body.replaceAll(".*\"id\":\"([^\"]+)\".*", "$1");
+            }
+
+            long[] latencies = new long[requests];
+            long start = System.nanoTime();
+            try (ExecutorService executor = Executors.newFixedThreadPool(clients, Thread.ofVirtual().factory())) {
+                List<Future<?>> futures = new ArrayList<>(requests);
+                for (int i = 0; i < requests; i++) {
+                    int request = i;
+                    futures.add(executor.submit(() -> {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        String base = nodes.get(random.nextInt(nodeCount)) + "/kingdoms/";
+                        String id = ids[random.nextInt(KINGDOMS)];
+                        String other = ids[random.nextInt(KINGDOMS)];
+                        HttpRequest httpRequest = switch (request % 8) {
+                            case 0 -> HttpRequest.newBuilder(URI.create(base + id + "/attack/" + other))
+                                    .POST(HttpRequest.BodyPublishers.noBody()).build();
+                            case 1, 2 -> HttpRequest.newBuilder(URI.create(base + id + "/invest?type=food"))
+                                    .header("Content-Type", "application/json")
+                                    .POST(HttpRequest.BodyPublishers.ofString("{\"gold\":0}")).build();
+                            default -> HttpRequest.newBuilder(URI.create(base + id)).GET().build();
+                        };
+                        long sent = System.nanoTime();
+                        // Attacks of a kingdom on itself are rejected, which is part of the mix
+                        client.send(httpRequest, HttpResponse.BodyHandlers.discarding());
+                        latencies[request] = System.nanoTime() - sent;
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Arrays.sort(latencies);
+            double throughput = requests / seconds;
+            double p50 = latencies[requests / 2] / 1e6;
+            double p99 = latencies[(int) (requests * 0.99)] / 1e6;
+            System.out.printf(Locale.ROOT, "%d nodes %10.0f req/s   p50 %8.2f ms   p99 %8.2f ms%n",
+                    nodeCount, throughput, p50, p99);
+            return String.format(Locale.ROOT,
+                    "{\"nodes\":%d,\"clients\":%d,\"requests\":%d,\"throughput\":%.1f,\"p50Ms\":%.3f,\"p99Ms\":%.3f}",
+                    nodeCount, clients, requests, throughput, p50, p99);
+        } finally {
+            contexts.forEach(ConfigurableApplicationContext::close);
+        }
+    }
+
+    private static String send(HttpClient client, HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 300) {
+            throw new IllegalStateException(request.uri() + " returned " + response.statusCode());
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,152 @@
+package com.tecnocampus.examsimulation.benchmark;
+
+import com.tecnocampus.examsimulation.api.application.ColumnarKingdomRepository;
+import com.tecnocampus.examsimulation.api.application.KingdomIds;
+import com.tecnocampus.examsimulation.api.application.KingdomJournal;
+import com.tecnocampus.examsimulation.api.application.KingdomRing;
+import com.tecnocampus.examsimulation.api.application.KingdomWriteBehind;
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Durable write throughput of the columnar storage with its journal, for each of
+ * {@code jmh.threads} writer threads, and the time to recover {@code jmh.tableSize} kingdoms from
+ * the log alone and from a snapshot. Results are printed and written to
+ * {@code jmh.output}/journal.json.
+ *
+ * Run with: mvn -Pjmh -DskipTests test-compile exec:exec -Dbenchmark.main=com.tecnocampus.examsimulation.benchmark.JournalBenchmark
+ */
+public class JournalBenchmark {
+    private static final int WRITES = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        File output = new File(System.getProperty("jmh.output", "target/jmh"));
+        output.mkdirs();
+        List<String> results = new ArrayList<>();
+        for (String threads : System.getProperty("jmh.threads", "1,4,16").split(",")) {
+            results.add(writes(Integer.parseInt(threads.trim())));
+        }
+        for (String tableSize : System.getProperty("jmh.tableSize", "1000,100000,1000000").split(",")) {
+            results.add(recovery(Integer.parseInt(tableSize.trim())));
+        }
+        Files.writeString(new File(output, "journal.json").toPath(), "[" + String.join(",", results) + "]");
+    }
+
+    private static String writes(int threads) throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        KingdomJournal journal = new KingdomJournal(directory, Duration.ofHours(1));
+        ColumnarKingdomRepository repository = open(journal);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            ids.add(repository.save(kingdom()).getId());
+        }
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < WRITES / threads; i++) {
+                        repository.investInFood(ids.get(ThreadLocalRandom.current().nextInt(ids.size())), 0);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        journal.close();
+        delete(directory);
+
+        double throughput = (WRITES / threads) * threads / seconds;
+        System.out.printf(Locale.ROOT, "writes   %3d threads %10.0f ops/s%n", threads, throughput);
+        return String.format(Locale.ROOT, "{\"benchmark\":\"writes\",\"threads\":%d,\"throughput\":%.1f}",
+                threads, throughput);
+    }
+
+    private static String recovery(int tableSize) throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        KingdomJournal journal = new KingdomJournal(directory, Duration.ofHours(1));
+        ColumnarKingdomRepository repository = open(journal);
+        List<Kingdom> kingdoms = new ArrayList<>(tableSize);
+        for (int i = 0; i < tableSize; i++) {
+            kingdoms.add(kingdom());
+        }
+        repository.insertAll(kingdoms);
+        repository.applyDailyProductionToAll(LocalDate.now());
+        journal.close();
+        double fromLog = recoverMillis(directory);
+
+        // Recovering once more leaves the state in a snapshot
+        KingdomJournal snapshotting = new KingdomJournal(directory, Duration.ofMillis(1));
+        ColumnarKingdomRepository reopened = open(snapshotting);
+        reopened.investInFood(kingdoms.get(0).getId(), 0);
+        while (!hasSnapshot(directory)) {
+            Thread.sleep(10);
+        }
+        snapshotting.close();
+        double fromSnapshot = recoverMillis(directory);
+        delete(directory);
+
+        System.out.printf(Locale.ROOT, "recovery %8d kingdoms  log %8.1f ms  snapshot %8.1f ms%n",
+                tableSize, fromLog, fromSnapshot);
+        return String.format(Locale.ROOT,
+                "{\"benchmark\":\"recovery\",\"tableSize\":%d,\"logMs\":%.1f,\"snapshotMs\":%.1f}",
+                tableSize, fromLog, fromSnapshot);
+    }
+
+    private static double recoverMillis(Path directory) {
+        KingdomJournal journal = new KingdomJournal(directory, Duration.ofHours(1));
+        long start = System.nanoTime();
+        open(journal);
+        double millis = (System.nanoTime() - start) / 1e6;
+        journal.close();
+        return millis;
+    }
+
+    private static boolean hasSnapshot(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.anyMatch(file -> file.getFileName().toString().endsWith(".bin"));
+        }
+    }
+
+    private static ColumnarKingdomRepository open(KingdomJournal journal) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("kingdomJournal", journal));
+        ColumnarKingdomRepository repository = new ColumnarKingdomRepository(beans.getBeanProvider(KingdomJournal.class),
+                beans.getBeanProvider(KingdomWriteBehind.class), new KingdomIds(beans.getBeanProvider(KingdomRing.class)));
+        repository.recover();
+        return repository;
+    }
+
+    private static Kingdom kingdom() {
+        Kingdom kingdom = new Kingdom(60, 1_000_000, 1_000_000);
+        kingdom.setDateOfCreation(LocalDate.now());
+        return kingdom;
+    }
+
+    private static void delete(Path directory) throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.tecnocampus.examsimulation.benchmark;
+
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Garbage left by a read from the cache, a read from the table and an investment, meant to be run
+ * with the gc profiler, whose {@code gc.alloc.rate.norm} is the bytes allocated per operation:
+ *
+ * <pre>
+ * mvn -Pjmh -DskipTests test-compile exec:exec -Djmh.include=KingdomAllocationBenchmark \
+ *     -Djmh.prof=gc -Djmh.threads=1 -Djmh.tableSize=1000
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KingdomAllocationBenchmark {
+
+    @Benchmark
+    public Kingdom getKingdom(KingdomWorld world) {
+        return world.kingdomService.getKingdom(world.randomId());
+    }
+
+    @Benchmark
+    public Object loadKingdom(KingdomWorld world) {
+        // Skips the cache, so the row is read and mapped every time
+        return world.kingdomRepository.findByIdForUpdate(world.randomId());
+    }
+
+    @Benchmark
+    public Kingdom invest(KingdomWorld world) {
+        String type = ThreadLocalRandom.current().nextBoolean() ? "food" : "citizens";
+        return world.kingdomService.invest(world.randomId(), type, 0);
+    }
+
+    @Benchmark
+    public Kingdom createKingdom(KingdomWorld world) {
+        return world.kingdomService.createKingdom(new Kingdom(10, 10, 10));
+    }
+}
@@ -0,0 +1,70 @@
+package com.tecnocampus.examsimulation.benchmark;
+
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the {@code KingdomService} operations behind each endpoint. Operations that fail on
+ * the game rules return the exception so it is still consumed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KingdomServiceBenchmark {
+
+    @Benchmark
+    public Kingdom createKingdom(KingdomWorld world) {
+        return world.kingdomService.createKingdom(new Kingdom(10, 10, 10));
+    }
+
+    @Benchmark
+    public Object startDailyProduction(KingdomWorld world) {
+        try {
+            return world.kingdomService.startDailyProduction(world.randomId());
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object invest(KingdomWorld world) {
+        String type = ThreadLocalRandom.current().nextBoolean() ? "food" : "citizens";
+        try {
+            return world.kingdomService.invest(world.randomId(), type, 1);
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object attack(KingdomWorld world) {
+        String attackerId = world.randomId();
+        String targetId = world.randomId();
+        try {
+            return world.kingdomService.attack(attackerId, targetId);
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Kingdom getKingdom(KingdomWorld world) {
+        return world.kingdomService.getKingdom(world.randomId());
+    }
+
+    @Benchmark
+    public Kingdom getRichestKingdom(KingdomWorld world) {
+        return world.kingdomService.getRichestKingdom();
+    }
+}
@@ -0,0 +1,161 @@
+package com.tecnocampus.examsimulation.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup by id and top 10 by gold against the kingdoms table, with the statements the repository
+ * sends, before and after the managed schema:
+ * <ul>
+ *     <li>{@code legacy}: VARCHAR ids, no gold index, {@code SELECT *}, and no statement cache,
+ *     as the repository's statements did not fit in H2's default cache of 8</li>
+ *     <li>{@code managed}: {@code schema.sql} with UUID ids and the gold index, explicit columns,
+ *     and the statement cache size of {@code application.properties}</li>
+ * </ul>
+ * Run with {@code -Djmh.tableSize=1000000} for the figures quoted in the README.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KingdomTableBenchmark {
+    private static final String LEGACY_SCHEMA = "CREATE TABLE kingdoms (id VARCHAR(36) PRIMARY KEY, gold INT NOT NULL, "
+            + "citizens INT NOT NULL, food INT NOT NULL, date_of_creation DATE NOT NULL, version BIGINT DEFAULT 0 NOT NULL)";
+    private static final String COLUMNS = "id, gold, citizens, food, date_of_creation, version";
+    private static final int SEED_CHUNK = 10_000;
+
+    @State(Scope.Benchmark)
+    public static class Table {
+        @Param({"legacy", "managed"})
+        public String schema;
+
+        @Param({"1000"})
+        public int tableSize;
+
+        String url;
+        String[] ids;
+        private Connection keepAlive;
+
+        @Setup(Level.Trial)
+        public void seed() throws SQLException {
+            boolean managed = schema.equals("managed");
+            url = "jdbc:h2:mem:table-" + schema + ";QUERY_CACHE_SIZE=" + (managed ? 64 : 0);
+            keepAlive = DriverManager.getConnection(url);
+            if (managed) {
+                ScriptUtils.executeSqlScript(keepAlive, new ClassPathResource("schema.sql"));
+            } else {
+                try (Statement statement = keepAlive.createStatement()) {
+                    statement.execute(LEGACY_SCHEMA);
+                }
+            }
+
+            Random random = new Random(42);
+            ids = new String[tableSize];
+            keepAlive.setAutoCommit(false);
+            try (PreparedStatement insert = keepAlive.prepareStatement(
+                    "INSERT INTO kingdoms (id, gold, citizens, food, date_of_creation, version) VALUES (?, ?, ?, ?, ?, 0)")) {
+                for (int i = 0; i < tableSize; i++) {
+                    UUID id = UUID.randomUUID();
+                    ids[i] = id.toString();
+                    insert.setObject(1, managed ? id : ids[i]);
+                    insert.setInt(2, random.nextInt(1_000_000));
+                    insert.setInt(3, random.nextInt(1_000));
+                    insert.setInt(4, random.nextInt(1_000));
+                    insert.setObject(5, LocalDate.of(2025, 1, 1));
+                    insert.addBatch();
+                    if ((i + 1) % SEED_CHUNK == 0 || i == tableSize - 1) {
+                        insert.executeBatch();
+                        keepAlive.commit();
+                    }
+                }
+            }
+            keepAlive.setAutoCommit(true);
+        }
+
+        @TearDown(Level.Trial)
+        public void drop() throws SQLException {
+            try (Statement statement = keepAlive.createStatement()) {
+                statement.execute("DROP TABLE kingdoms");
+            }
+            keepAlive.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+        Connection connection;
+        boolean managed;
+
+        @Setup(Level.Trial)
+        public void open(Table table) throws SQLException {
+            connection = DriverManager.getConnection(table.url);
+            managed = table.schema.equals("managed");
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            connection.close();
+        }
+    }
+
+    /**
+     * Prepares the statement on every call, as {@code JdbcTemplate} does.
+     */
+    @Benchmark
+    public void findById(Table table, Session session, Blackhole blackhole) throws SQLException {
+        String id = table.ids[ThreadLocalRandom.current().nextInt(table.ids.length)];
+        String sql = session.managed ? "SELECT " + COLUMNS + " FROM kingdoms WHERE id = ?" : "SELECT * FROM kingdoms WHERE id = ?";
+        try (PreparedStatement statement = session.connection.prepareStatement(sql)) {
+            statement.setObject(1, session.managed ? UUID.fromString(id) : id);
+            consume(statement, blackhole);
+        }
+    }
+
+    @Benchmark
+    public void top10(Session session, Blackhole blackhole) throws SQLException {
+        String sql = (session.managed ? "SELECT " + COLUMNS : "SELECT *") + " FROM kingdoms ORDER BY gold DESC, id LIMIT 10";
+        try (PreparedStatement statement = session.connection.prepareStatement(sql)) {
+            consume(statement, blackhole);
+        }
+    }
+
+    private static void consume(PreparedStatement statement, Blackhole blackhole) throws SQLException {
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                blackhole.consume(rs.getString(1));
+                blackhole.consume(rs.getInt(2));
+                blackhole.consume(rs.getInt(3));
+                blackhole.consume(rs.getInt(4));
+                blackhole.consume(rs.getObject(5, LocalDate.class));
+                blackhole.consume(rs.getLong(6));
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.tecnocampus.examsimulation.benchmark;
+
+import com.tecnocampus.examsimulation.ExamSimulationApplication;
+import com.tecnocampus.examsimulation.api.application.KingdomRepository;
+import com.tecnocampus.examsimulation.api.application.KingdomService;
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The application running against a fresh embedded H2 seeded with {@code tableSize} kingdoms.
+ * Seeded kingdoms get plenty of food and citizens so they survive the whole measurement.
+ */
+@State(Scope.Benchmark)
+public class KingdomWorld {
+    private static final int SEED_CHUNK = 10_000;
+
+    @Param({"1000"})
+    public int tableSize;
+
+    public ConfigurableApplicationContext context;
+    public KingdomService kingdomService;
+    public KingdomRepository kingdomRepository;
+    public String[] ids;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(ExamSimulationApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "logging.level.root=WARN")
+                .run();
+        kingdomService = context.getBean(KingdomService.class);
+
+        kingdomRepository = context.getBean(KingdomRepository.class);
+        Random random = new Random(42);
+        ids = new String[tableSize];
+        List<Kingdom> chunk = new ArrayList<>(SEED_CHUNK);
+        for (int i = 0; i < tableSize; i++) {
+            chunk.add(new Kingdom(random.nextInt(1_000), 1_000_000 + random.nextInt(1_000), 1_000_000_000));
+            if (chunk.size() == SEED_CHUNK || i == tableSize - 1) {
+                int first = i + 1 - chunk.size();
+                for (Kingdom kingdom : kingdomRepository.insertAll(chunk)) {
+                    ids[first++] = kingdom.getId();
+                }
+                chunk = new ArrayList<>(SEED_CHUNK);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    public String randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+}
@@ -0,0 +1,99 @@
+package com.tecnocampus.examsimulation.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing and reading a kingdom, and a page of {@value #PAGE} kingdoms, in each wire
+ * format, with mappers built like the application's message converters. The payload sizes are
+ * printed at setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+    private static final int PAGE = 100;
+    private static final TypeReference<List<Kingdom>> KINGDOMS = new TypeReference<>() {
+    };
+
+    @Param({"json", "cbor", "smile"})
+    public String format;
+
+    private ObjectMapper mapper;
+    private Kingdom kingdom;
+    private List<Kingdom> page;
+    private byte[] kingdomBytes;
+    private byte[] pageBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        JsonFactory factory = switch (format) {
+            case "cbor" -> new CBORFactory();
+            case "smile" -> new SmileFactory();
+            default -> new JsonFactory();
+        };
+        mapper = new Jackson2ObjectMapperBuilder().factory(factory).build();
+
+        page = new ArrayList<>(PAGE);
+        for (int i = 0; i < PAGE; i++) {
+            Kingdom k = new Kingdom(i % 60, 1 + i % 30, 10 * i);
+            k.setId(UUID.randomUUID().toString());
+            k.setDateOfCreation(LocalDate.of(2025, 1, 1).plusDays(i));
+            k.setVersion((long) i);
+            page.add(k);
+        }
+        kingdom = page.get(0);
+        kingdomBytes = mapper.writeValueAsBytes(kingdom);
+        pageBytes = mapper.writeValueAsBytes(page);
+        System.out.printf(Locale.ROOT, "%n%s payload: kingdom %d bytes, page of %d %d bytes%n",
+                format, kingdomBytes.length, PAGE, pageBytes.length);
+    }
+
+    @Benchmark
+    public byte[] writeKingdom() throws IOException {
+        return mapper.writeValueAsBytes(kingdom);
+    }
+
+    @Benchmark
+    public byte[] writePage() throws IOException {
+        return mapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public Kingdom readKingdom() throws IOException {
+        return mapper.readValue(kingdomBytes, Kingdom.class);
+    }
+
+    @Benchmark
+    public List<Kingdom> readPage() throws IOException {
+        return mapper.readValue(pageBytes, KINGDOMS);
+    }
+}
@@ -0,0 +1,117 @@
+package com.tecnocampus.examsimulation.benchmark;
+
+import com.tecnocampus.examsimulation.ExamSimulationApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Load test comparing Tomcat on platform threads, Tomcat on virtual threads and the reactive
+ * variant of the API on Netty and R2DBC ({@code spring.main.web-application-type=reactive}). Each
+ * mode starts the
+ * application on a random port and {@code load.clients} concurrent clients send
+ * {@code load.requests} requests, a mix of kingdom reads and investments. Throughput and
+ * p50/p99 latency are printed and written to {@code jmh.output}/thread-modes.json.
+ *
+ * Run with: mvn -Pjmh -DskipTests test-compile exec:exec -Dbenchmark.main=com.tecnocampus.examsimulation.benchmark.ThreadModeLoadTest
+ */
+public class ThreadModeLoadTest {
+    private static final int KINGDOMS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = Integer.getInteger("load.clients", 1_000);
+        int requests = Integer.getInteger("load.requests", 50_000);
+        File output = new File(System.getProperty("jmh.output", "target/jmh"));
+        output.mkdirs();
+
+        List<String> results = new ArrayList<>();
+        for (String mode : new String[]{"platform", "virtual", "reactive"}) {
+            results.add(run(mode, clients, requests));
+        }
+        Files.writeString(new File(output, "thread-modes.json").toPath(), "[" + String.join(",", results) + "]");
+    }
+
+    private static String run(String mode, int clients, int requests) throws Exception {
+        // Arguments rather than default properties, which application.properties overrides
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ExamSimulationApplication.class)
+                .run("--server.port=0",
+                        "--spring.threads.virtual.enabled=" + mode.equals("virtual"),
+                        "--spring.main.web-application-type=" + (mode.equals("reactive") ? "reactive" : "servlet"),
+                        "--spring.datasource.url=jdbc:h2:mem:load-" + mode + ";DB_CLOSE_DELAY=-1",
+                        "--kingdom.reactive.url=r2dbc:h2:mem:///load-r2dbc-" + mode + ";DB_CLOSE_DELAY=-1",
+                        "--logging.level.root=WARN");
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            String base = "http://localhost:" + port + "/kingdoms";
+            HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+
+            String[] ids = new String[KINGDOMS];
+            for (int i = 0; i < KINGDOMS; i++) {
+                String body = send(client, HttpRequest.newBuilder(URI.create(base))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"gold\":60,\"citizens\":10,\"food\":10}")).build());
+                ids[i] = body.replaceAll(".*\"id\":\"([^\"]+)\".*", "$1");
+            }
+
+            long[] latencies = new long[requests];
+            long start = System.nanoTime();
+            try (ExecutorService executor = Executors.newFixedThreadPool(clients, Thread.ofVirtual().factory())) {
+                List<Future<?>> futures = new ArrayList<>(requests);
+                for (int i = 0; i < requests; i++) {
+                    int request = i;
+                    futures.add(executor.submit(() -> {
+                        String id = ids[ThreadLocalRandom.current().nextInt(KINGDOMS)];
+                        HttpRequest httpRequest = request % 4 == 0
+                                ? HttpRequest.newBuilder(URI.create(base + "/" + id + "/invest?type=food"))
+                                        .header("Content-Type", "application/json")
+                                        .POST(HttpRequest.BodyPublishers.ofString("{\"gold\":0}")).build()
+                                : HttpRequest.newBuilder(URI.create(base + "/" + id)).GET().build();
+                        long sent = System.nanoTime();
+                        send(client, httpRequest);
+                        latencies[request] = System.nanoTime() - sent;
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Arrays.sort(latencies);
+            double throughput = requests / seconds;
+            double p50 = latencies[requests / 2] / 1e6;
+            double p99 = latencies[(int) (requests * 0.99)] / 1e6;
+            System.out.printf(Locale.ROOT, "%-8s %10.0f req/s   p50 %8.2f ms   p99 %8.2f ms%n", mode, throughput, p50, p99);
+            return String.format(Locale.ROOT,
+                    "{\"mode\":\"%s\",\"clients\":%d,\"requests\":%d,\"throughput\":%.1f,\"p50Ms\":%.3f,\"p99Ms\":%.3f}",
+                    mode, clients, requests, throughput, p50, p99);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static String send(HttpClient client, HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 300) {
+            throw new IllegalStateException(request.uri() + " returned " + response.statusCode());
+        }
+        return response.body();
+    }
+}
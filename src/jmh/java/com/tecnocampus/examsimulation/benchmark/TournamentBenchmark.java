@@ -0,0 +1,56 @@
+package com.tecnocampus.examsimulation.benchmark;
+
+import com.tecnocampus.examsimulation.api.domain.Battle;
+import com.tecnocampus.examsimulation.api.domain.TournamentReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Battles per second when a burst of {@value #BATTLES} attacks is sent one attack at a time and as
+ * a single tournament.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TournamentBenchmark {
+    private static final int BATTLES = 1_000;
+
+    @Benchmark
+    @OperationsPerInvocation(BATTLES)
+    public void singleAttacks(KingdomWorld world, Blackhole blackhole) {
+        for (Battle battle : battles(world)) {
+            try {
+                blackhole.consume(world.kingdomService.attack(battle.getAttackerId(), battle.getTargetId()));
+            } catch (RuntimeException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATTLES)
+    public TournamentReport tournament(KingdomWorld world) {
+        return world.kingdomService.attackAll(battles(world));
+    }
+
+    private static List<Battle> battles(KingdomWorld world) {
+        List<Battle> battles = new ArrayList<>(BATTLES);
+        for (int i = 0; i < BATTLES; i++) {
+            battles.add(new Battle(world.randomId(), world.randomId()));
+        }
+        return battles;
+    }
+}
@@ -0,0 +1,192 @@
+package com.tecnocampus.examsimulation.api;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Replies of mutating requests sent with an {@code Idempotency-Key} header, so a retried request
+ * gets the original reply instead of being applied again.
+ *
+ * A key is bound to the request it was first used with: reusing it for a different request is
+ * answered with 422. A duplicate that arrives while the original is still running waits for its
+ * reply. Replies are kept for {@code kingdom.idempotency.ttl} and at most
+ * {@code kingdom.idempotency.max-size} of them; since every entry lives as long, the oldest entry
+ * is always the first to expire, and a FIFO queue is enough to evict them. Requests that fail with
+ * an exception are not remembered and can be retried.
+ */
+@Component
+public class IdempotencyCache {
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter conflicts;
+
+    public IdempotencyCache(@Value("${kingdom.idempotency.max-size:100000}") int maxSize,
+                            @Value("${kingdom.idempotency.ttl:10m}") Duration ttl,
+                            MeterRegistry meterRegistry) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.hits = requestCounter(meterRegistry, "hit");
+        this.misses = requestCounter(meterRegistry, "miss");
+        this.conflicts = requestCounter(meterRegistry, "conflict");
+        Gauge.builder("kingdom.idempotency.size", entries, Map::size)
+                .description("Replies kept for idempotent retries")
+                .register(meterRegistry);
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("kingdom.idempotency.requests")
+                .description("Requests with an Idempotency-Key (hit: answered with the original reply)")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final String request;
+        private final long expiresAt;
+        private final CompletableFuture<ResponseEntity<?>> reply = new CompletableFuture<>();
+
+        private Entry(String key, String request, long expiresAt) {
+            this.key = key;
+            this.request = request;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Runs {@code action} unless {@code key} was already used for {@code request}, in which case the
+     * reply of that first run is returned. {@code request} identifies the operation and its
+     * arguments. Without a key the action always runs.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ResponseEntity<T> execute(String key, String request, Supplier<ResponseEntity<T>> action) {
+        if (key == null) {
+            return action.get();
+        }
+        long now = System.nanoTime();
+        evict(now);
+
+        Entry entry = new Entry(key, request, now + ttlNanos);
+        while (true) {
+            Entry existing = entries.putIfAbsent(key, entry);
+            if (existing == null) {
+                break;
+            }
+            if (existing.expiresAt - now > 0) {
+                if (!existing.request.equals(request)) {
+                    conflicts.increment();
+                    return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+                }
+                hits.increment();
+                return (ResponseEntity<T>) replay(existing);
+            }
+            entries.remove(key, existing);
+        }
+        insertionOrder.add(entry);
+        queued.incrementAndGet();
+        misses.increment();
+
+        try {
+            ResponseEntity<T> reply = action.get();
+            entry.reply.complete(reply);
+            return reply;
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, entry);
+            entry.reply.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Identifies a request by {@code operation} and a SHA-256 of its content, for requests whose
+     * body is too large to keep whole in every entry.
+     */
+    public static String fingerprint(String operation, byte[] content) {
+        MessageDigest digest = sha256();
+        digest.update(content);
+        return fingerprint(operation, digest);
+    }
+
+    /**
+     * Identifies a request by {@code operation} and a SHA-256 of {@code parts}, each followed by a
+     * line break so that different splits of the same text differ.
+     */
+    public static String fingerprint(String operation, Iterable<String> parts) {
+        MessageDigest digest = sha256();
+        for (String part : parts) {
+            digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return fingerprint(operation, digest);
+    }
+
+    private static String fingerprint(String operation, MessageDigest digest) {
+        return operation + " " + HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ResponseEntity<?> replay(Entry entry) {
+        ResponseEntity<?> reply;
+        try {
+            reply = entry.reply.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.addAll(reply.getHeaders());
+        headers.set(REPLAYED_HEADER, "true");
+        return new ResponseEntity<>(reply.getBody(), headers, reply.getStatusCode());
+    }
+
+    private void evict(long now) {
+        for (Entry oldest = insertionOrder.peek(); oldest != null; oldest = insertionOrder.peek()) {
+            if (oldest.expiresAt - now > 0 && queued.get() < maxSize) {
+                return;
+            }
+            if (insertionOrder.remove(oldest)) {
+                queued.decrementAndGet();
+                entries.remove(oldest.key, oldest);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.tecnocampus.examsimulation.api;
+
+import com.tecnocampus.examsimulation.api.application.KingdomRing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Admission control in front of the kingdom endpoints, turned on with {@code kingdom.rate-limit.enabled}
+ * and {@code kingdom.shedding.enabled}.
+ *
+ * Rate limiting applies to investments and attacks, the requests that change kingdoms: each takes a
+ * token from the bucket of its client and one from the bucket of the kingdom it changes (the one
+ * investing, or the one attacked), so neither a busy client nor many clients piling on one kingdom
+ * can hold its lock for everyone else. Clients are told apart by {@code kingdom.rate-limit.client-header}
+ * when set, or else by their address. A request out of tokens gets 429 with the seconds to wait in
+ * Retry-After.
+ *
+ * Load shedding applies to every request under {@code /kingdoms} except event streams and exports,
+ * which stay open; requests over the limit of the {@link LoadShedder} get 503.
+ *
+ * Requests forwarded by another node of the cluster were admitted there and pass through. This filter
+ * runs before {@link KingdomRoutingFilter}, so requests are admitted by the node that receives them.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnExpression("${kingdom.rate-limit.enabled:false} or ${kingdom.shedding.enabled:false}")
+public class KingdomAdmissionFilter extends OncePerRequestFilter {
+    private static final Pattern LIMITED_PATH =
+            Pattern.compile("^/kingdoms/([^/]+)/(?:invest|attack/([^/]+))$");
+
+    private final TokenBuckets clients;
+    private final TokenBuckets kingdoms;
+    private final LoadShedder shedder;
+    private final String clientHeader;
+    private final ObjectProvider<KingdomRing> ring;
+    private final Counter admitted;
+    private final Counter limitedClient;
+    private final Counter limitedKingdom;
+    private final Counter shed;
+
+    public KingdomAdmissionFilter(@Value("${kingdom.rate-limit.enabled:false}") boolean rateLimited,
+                                  @Value("${kingdom.rate-limit.client.rate:20}") double clientRate,
+                                  @Value("${kingdom.rate-limit.client.burst:40}") int clientBurst,
+                                  @Value("${kingdom.rate-limit.kingdom.rate:50}") double kingdomRate,
+                                  @Value("${kingdom.rate-limit.kingdom.burst:100}") int kingdomBurst,
+                                  @Value("${kingdom.rate-limit.slots:65536}") int slots,
+                                  @Value("${kingdom.rate-limit.client-header:}") String clientHeader,
+                                  @Value("${kingdom.shedding.enabled:false}") boolean shedding,
+                                  @Value("${kingdom.shedding.latency-target:20ms}") Duration latencyTarget,
+                                  @Value("${kingdom.shedding.sample-interval:100ms}") Duration sampleInterval,
+                                  @Value("${kingdom.shedding.min-concurrency:8}") int minConcurrency,
+                                  @Value("${kingdom.shedding.max-concurrency:200}") int maxConcurrency,
+                                  ObjectProvider<KingdomRing> ring, MeterRegistry meterRegistry) {
+        this.clients = rateLimited ? new TokenBuckets(clientRate, clientBurst, slots) : null;
+        this.kingdoms = rateLimited ? new TokenBuckets(kingdomRate, kingdomBurst, slots) : null;
+        this.shedder = shedding
+                ? new LoadShedder(meterRegistry, latencyTarget, sampleInterval, minConcurrency, maxConcurrency)
+                : null;
+        this.clientHeader = clientHeader;
+        this.ring = ring;
+        this.admitted = admissionCounter(meterRegistry, "admitted");
+        this.limitedClient = admissionCounter(meterRegistry, "limited_client");
+        this.limitedKingdom = admissionCounter(meterRegistry, "limited_kingdom");
+        this.shed = admissionCounter(meterRegistry, "shed");
+        if (shedder != null) {
+            Gauge.builder("kingdom.admission.limit", shedder, LoadShedder::limit)
+                    .description("Requests allowed in flight")
+                    .register(meterRegistry);
+            Gauge.builder("kingdom.admission.in-flight", shedder, LoadShedder::inFlight)
+                    .description("Requests in flight")
+                    .register(meterRegistry);
+            Gauge.builder("kingdom.admission.repository-latency", shedder, LoadShedder::repositoryLatencyMillis)
+                    .description("Mean kingdom repository call time in the last sample")
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+        }
+    }
+
+    private static Counter admissionCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("kingdom.admission.requests")
+                .description("Requests to the kingdom endpoints by admission outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = path(request);
+        if (!path.equals("/kingdoms") && !path.startsWith("/kingdoms/")) {
+            return true;
+        }
+        KingdomRing peers = ring.getIfAvailable();
+        return peers != null && peers.isPeer(request.getHeader(KingdomRing.TOKEN_HEADER));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = path(request);
+        if (clients != null && request.getMethod().equals("POST")) {
+            Matcher matcher = LIMITED_PATH.matcher(path);
+            if (matcher.matches()) {
+                long wait = clients.tryTake(client(request));
+                if (wait > 0) {
+                    limitedClient.increment();
+                    reject(response, HttpStatus.TOO_MANY_REQUESTS, wait, "Too many requests from this client");
+                    return;
+                }
+                String kingdom = matcher.group(2) != null ? matcher.group(2) : matcher.group(1);
+                wait = kingdoms.tryTake(kingdom.toLowerCase());
+                if (wait > 0) {
+                    limitedKingdom.increment();
+                    reject(response, HttpStatus.TOO_MANY_REQUESTS, wait, "Too many requests for this kingdom");
+                    return;
+                }
+            }
+        }
+        if (shedder == null || path.endsWith("/events") || path.equals("/kingdoms/export")) {
+            admitted.increment();
+            chain.doFilter(request, response);
+            return;
+        }
+        if (!shedder.tryAcquire()) {
+            shed.increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1), "Server overloaded");
+            return;
+        }
+        admitted.increment();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            shedder.release();
+        }
+    }
+
+    private String client(HttpServletRequest request) {
+        String value = clientHeader.isBlank() ? null : request.getHeader(clientHeader);
+        return value != null && !value.isBlank() ? value : request.getRemoteAddr();
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, long waitNanos, String message)
+            throws IOException {
+        // Whole seconds, rounded up so a client that waits that long finds a token
+        long seconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        response.sendError(status.value(), message);
+    }
+}
@@ -1,33 +1,122 @@
 package com.tecnocampus.examsimulation.api;
 
+import com.tecnocampus.examsimulation.api.application.KingdomRing;
 import com.tecnocampus.examsimulation.api.application.KingdomService;
+import com.tecnocampus.examsimulation.api.domain.BatchReport;
+import com.tecnocampus.examsimulation.api.domain.Battle;
 import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import com.tecnocampus.examsimulation.api.domain.ProductionReport;
+import com.tecnocampus.examsimulation.api.domain.SimulationReport;
+import com.tecnocampus.examsimulation.api.domain.TournamentReport;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Hidden;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Timed(value = "kingdom.controller", histogram = true)
 @RequestMapping("/kingdoms")
 @Tag(name = "Kingdom Management", description = "Endpoints for managing medieval kingdoms")
 public class KingdomController {
     private final KingdomService kingdomService;
+    private final ObjectMapper objectMapper;
+    private final IdempotencyCache idempotencyCache;
+    private final KingdomEventStream eventStream;
+    private final KingdomRing ring;
 
-    public KingdomController(KingdomService kingdomService) {
+    public KingdomController(KingdomService kingdomService, ObjectMapper objectMapper, IdempotencyCache idempotencyCache,
+                             KingdomEventStream eventStream, ObjectProvider<KingdomRing> ring) {
         this.kingdomService = kingdomService;
+        this.objectMapper = objectMapper;
+        this.idempotencyCache = idempotencyCache;
+        this.eventStream = eventStream;
+        this.ring = ring.getIfAvailable();
+    }
+
+    /**
+     * Bodies rejected by {@code @Valid} get the 406 of every other invalid parameter, not Spring's 400.
+     */
+    @ExceptionHandler(MethodArgumentNotValidException.class)
+    public ResponseEntity<Void> invalidBody() {
+        return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
     }
 
     @Operation(summary = "Create a new kingdom", description = "Creates a kingdom with initial resources")
     @ApiResponse(responseCode = "201", description = "Kingdom successfully created")
+    @ApiResponse(responseCode = "406", description = "Not acceptable (resources out of range)")
     @PostMapping
-    public ResponseEntity<Kingdom> createKingdom(@Valid @RequestBody Kingdom kingdom) {
-        Kingdom createdKingdom = kingdomService.createKingdom(kingdom);
-        return ResponseEntity.status(HttpStatus.CREATED).body(createdKingdom);
+    public ResponseEntity<Kingdom> createKingdom(
+            @Valid @RequestBody Kingdom kingdom,
+            @Parameter(description = "Key that makes retries of this request return the first reply")
+            @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey) {
+        // Only needed to match retries
+        String request = idempotencyKey == null ? null
+                : "create " + kingdom.getGold() + " " + kingdom.getCitizens() + " " + kingdom.getFood();
+        return idempotencyCache.execute(idempotencyKey, request, () -> {
+            Kingdom createdKingdom = kingdomService.createKingdom(kingdom);
+            return ResponseEntity.status(HttpStatus.CREATED).body(createdKingdom);
+        });
+    }
+
+    @Operation(summary = "Create kingdoms in bulk",
+            description = "Creates kingdoms from a JSON array or newline-delimited JSON, reporting invalid ones by index")
+    @ApiResponse(responseCode = "201", description = "Batch processed, see the report for the ids created and failed kingdoms")
+    @ApiResponse(responseCode = "400", description = "Body does not start with valid JSON, nothing was created")
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BatchReport> createKingdoms(
+            InputStream body,
+            @Parameter(description = "Key that makes retries of this request return the first reply")
+            @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return createKingdoms(body);
+        }
+        // A retried key must come with the same body, so it is read whole to fingerprint it
+        byte[] content;
+        try {
+            content = body.readAllBytes();
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return idempotencyCache.execute(idempotencyKey, IdempotencyCache.fingerprint("batch", content),
+                () -> createKingdoms(new ByteArrayInputStream(content)));
+    }
+
+    private ResponseEntity<BatchReport> createKingdoms(InputStream body) {
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            BatchReport report = kingdomService.createKingdoms(new KingdomIterator(parser));
+            return ResponseEntity.status(HttpStatus.CREATED).body(report);
+        } catch (IOException | UncheckedIOException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @Operation(summary = "Start daily production", description = "Process daily production cycle")
@@ -36,13 +125,56 @@ public class KingdomController {
     @ApiResponse(responseCode = "406", description = "Not acceptable (no citizens left)")
     @PostMapping("/{id}")
     public ResponseEntity<Kingdom> startDailyProduction(
-            @Parameter(description = "ID of the kingdom to process") @PathVariable String id) {
-        try {
-            Kingdom kingdom = kingdomService.startDailyProduction(id);
-            return ResponseEntity.ok(kingdom);
-        } catch (IllegalStateException e) {
-            return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
-        }
+            @Parameter(description = "ID of the kingdom to process") @PathVariable String id,
+            @Parameter(description = "Key that makes retries of this request return the first reply")
+            @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey) {
+        return idempotencyCache.execute(idempotencyKey, "production " + id, () -> {
+            try {
+                Kingdom kingdom = kingdomService.startDailyProduction(id);
+                return ResponseEntity.ok(kingdom);
+            } catch (IllegalStateException e) {
+                return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+            }
+        });
+    }
+
+    @Operation(summary = "Start world production", description = "Process the daily production cycle for every kingdom")
+    @ApiResponse(responseCode = "200", description = "Production completed for all kingdoms")
+    @PostMapping("/production")
+    public ResponseEntity<ProductionReport> startWorldProduction(
+            @Parameter(description = "Key that makes retries of this request return the first reply")
+            @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey,
+            @Parameter(hidden = true) @RequestHeader(value = KingdomRing.TOKEN_HEADER, required = false) String token) {
+        return idempotencyCache.execute(idempotencyKey, "world production", () -> {
+            ProductionReport report = clusterWide(token)
+                    ? kingdomService.startWorldProductionOfCluster()
+                    : kingdomService.startWorldProduction();
+            return ResponseEntity.ok(report);
+        });
+    }
+
+    @Operation(summary = "Simulate production",
+            description = "Run daily production for every kingdom for a number of days, or project it with dryRun")
+    @ApiResponse(responseCode = "200", description = "Simulation completed, with the projected kingdoms on a dry run")
+    @ApiResponse(responseCode = "406", description = "Not acceptable (days must be positive)")
+    @ApiResponse(responseCode = "409", description = "Kingdoms changed during the simulation, nothing was saved")
+    @PostMapping("/simulate")
+    public ResponseEntity<SimulationReport> simulate(
+            @Parameter(description = "Number of days to simulate", example = "365") @RequestParam int days,
+            @Parameter(description = "Return the projection without saving it")
+            @RequestParam(defaultValue = "false") boolean dryRun,
+            @Parameter(description = "Key that makes retries of this request return the first reply")
+            @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey) {
+        return idempotencyCache.execute(idempotencyKey, "simulate " + days + " " + dryRun, () -> {
+            try {
+                SimulationReport report = kingdomService.simulate(days, dryRun);
+                return ResponseEntity.ok(report);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+            } catch (ConcurrencyFailureException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            }
+        });
     }
 
     @Operation(summary = "Invest resources", description = "Convert gold to food or citizens")
@@ -55,15 +187,65 @@ public class KingdomController {
             @Parameter(description = "ID of the kingdom") @PathVariable String id,
             @Parameter(description = "Type of investment (food or citizens)", example = "food")
             @RequestParam String type,
-            @Valid @RequestBody Kingdom.InvestRequest investRequest) {
+            @Valid @RequestBody Kingdom.InvestRequest investRequest,
+            @Parameter(description = "Key that makes retries of this request return the first reply")
+            @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey) {
+        String request = idempotencyKey == null ? null
+                : "invest " + id + " " + type + " " + investRequest.getGold();
+        return idempotencyCache.execute(idempotencyKey, request, () -> {
+            try {
+                Kingdom kingdom = kingdomService.invest(id, type, investRequest.getGold());
+                return ResponseEntity.ok(kingdom);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+            }
+        });
+    }
+
+    @Operation(summary = "List kingdoms", description = "Retrieve a page of kingdoms ordered by id")
+    @ApiResponse(responseCode = "200", description = "Kingdoms after the given id")
+    @ApiResponse(responseCode = "406", description = "Not acceptable (limit out of range)")
+    @GetMapping
+    public ResponseEntity<List<Kingdom>> getKingdoms(
+            @Parameter(description = "Return kingdoms after this id (last id of the previous page)")
+            @RequestParam(required = false) String after,
+            @Parameter(description = "Maximum number of kingdoms to return", example = "100")
+            @RequestParam(defaultValue = "100") int limit,
+            @Parameter(hidden = true) @RequestHeader(value = KingdomRing.TOKEN_HEADER, required = false) String token) {
         try {
-            Kingdom kingdom = kingdomService.invest(id, type, investRequest.getGold());
-            return ResponseEntity.ok(kingdom);
+            List<Kingdom> kingdoms = clusterWide(token)
+                    ? kingdomService.getKingdomsOfCluster(after, limit)
+                    : kingdomService.getKingdoms(after, limit);
+            return ResponseEntity.ok(kingdoms);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
         }
     }
 
+    @Operation(summary = "Export kingdoms", description = "Stream every kingdom as newline-delimited JSON")
+    @ApiResponse(responseCode = "200", description = "Kingdoms streamed")
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportKingdoms(
+            @Parameter(hidden = true) @RequestHeader(value = KingdomRing.TOKEN_HEADER, required = false) String token) {
+        boolean clusterWide = clusterWide(token);
+        StreamingResponseBody body = out -> {
+            Consumer<Kingdom> writer = kingdom -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(kingdom));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            if (clusterWide) {
+                kingdomService.exportKingdomsOfCluster(writer);
+            } else {
+                kingdomService.exportKingdoms(writer);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @Operation(summary = "Get kingdom status", description = "Retrieve current kingdom status")
     @ApiResponse(responseCode = "200", description = "Kingdom found")
     @ApiResponse(responseCode = "404", description = "Kingdom not found")
@@ -82,27 +264,200 @@ public class KingdomController {
     @ApiResponse(responseCode = "200", description = "Kingdom found")
     @ApiResponse(responseCode = "404", description = "No kingdoms exist")
     @GetMapping("/richest")
-    public ResponseEntity<Kingdom> getRichestKingdom() {
+    public ResponseEntity<Kingdom> getRichestKingdom(
+            @Parameter(hidden = true) @RequestHeader(value = KingdomRing.TOKEN_HEADER, required = false) String token) {
         try {
-            Kingdom kingdom = kingdomService.getRichestKingdom();
+            Kingdom kingdom = clusterWide(token)
+                    ? kingdomService.getRichestKingdomOfCluster()
+                    : kingdomService.getRichestKingdom();
             return ResponseEntity.ok(kingdom);
         } catch (NoSuchElementException e) {
             return ResponseEntity.notFound().build();
         }
     }
 
+    @Operation(summary = "Get richest kingdoms", description = "Retrieve the n kingdoms with most gold")
+    @ApiResponse(responseCode = "200", description = "Kingdoms ordered by gold")
+    @ApiResponse(responseCode = "406", description = "Not acceptable (n out of range)")
+    @GetMapping("/top")
+    public ResponseEntity<List<Kingdom>> getTopKingdoms(
+            @Parameter(description = "Number of kingdoms to return", example = "10")
+            @RequestParam(defaultValue = "10") int n,
+            @Parameter(hidden = true) @RequestHeader(value = KingdomRing.TOKEN_HEADER, required = false) String token) {
+        try {
+            List<Kingdom> kingdoms = clusterWide(token)
+                    ? kingdomService.getTopKingdomsOfCluster(n)
+                    : kingdomService.getTopKingdoms(n);
+            return ResponseEntity.ok(kingdoms);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+        }
+    }
+
+    @Operation(summary = "Watch a kingdom",
+            description = "Server-sent events with the kingdom now and after every committed change, until it is deleted")
+    @ApiResponse(responseCode = "200", description = "Event stream opened")
+    @ApiResponse(responseCode = "404", description = "Kingdom not found")
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> watchKingdom(
+            @Parameter(description = "ID of the kingdom") @PathVariable String id) {
+        try {
+            SseEmitter emitter = eventStream.subscribeKingdom(id);
+            return ResponseEntity.ok(emitter);
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @Operation(summary = "Watch the richest kingdoms",
+            description = "Server-sent events with the n richest kingdoms now and after every committed change")
+    @ApiResponse(responseCode = "200", description = "Event stream opened")
+    @ApiResponse(responseCode = "406", description = "Not acceptable (n out of range)")
+    @GetMapping(value = "/top/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> watchTopKingdoms(
+            @Parameter(description = "Number of kingdoms to return", example = "10")
+            @RequestParam(defaultValue = "10") int n) {
+        try {
+            SseEmitter emitter = eventStream.subscribeLeaderboard(n);
+            return ResponseEntity.ok(emitter);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+        }
+    }
+
     @Operation(summary = "Attack another kingdom", description = "Initiate attack between kingdoms")
     @ApiResponse(responseCode = "200", description = "Attack completed")
     @ApiResponse(responseCode = "404", description = "Kingdom not found")
+    @ApiResponse(responseCode = "406", description = "Not acceptable (a kingdom cannot attack itself)")
+    @ApiResponse(responseCode = "409", description = "Kingdoms kept changing concurrently, retry later")
     @PostMapping("/{id}/attack/{targetId}")
     public ResponseEntity<Kingdom> attack(
             @Parameter(description = "ID of attacking kingdom") @PathVariable String id,
-            @Parameter(description = "ID of target kingdom") @PathVariable String targetId) {
+            @Parameter(description = "ID of target kingdom") @PathVariable String targetId,
+            @Parameter(description = "Key that makes retries of this request return the first reply")
+            @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey) {
+        return idempotencyCache.execute(idempotencyKey, "attack " + id + " " + targetId, () -> {
+            try {
+                Kingdom kingdom = kingdomService.attack(id, targetId);
+                return ResponseEntity.ok(kingdom);
+            } catch (NoSuchElementException e) {
+                return ResponseEntity.notFound().build();
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+            } catch (ConcurrencyFailureException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            }
+        });
+    }
+
+    /**
+     * Second half of an attack on a kingdom of this node from another node of the cluster, see
+     * {@link KingdomService#attack(String, String)}. Only answered to requests with the cluster token.
+     */
+    @Hidden
+    @PostMapping("/{id}/battle")
+    public ResponseEntity<Kingdom> applyBattle(
+            @PathVariable String id,
+            @RequestBody Kingdom.BattleResult result,
+            @RequestHeader(value = KingdomRing.TOKEN_HEADER, required = false) String token) {
+        if (ring == null || !ring.isPeer(token)) {
+            return ResponseEntity.notFound().build();
+        }
         try {
-            Kingdom kingdom = kingdomService.attack(id, targetId);
+            Kingdom kingdom = kingdomService.applyBattleResult(id, result.getGold(), result.getCitizens(),
+                    result.getVersion());
             return ResponseEntity.ok(kingdom);
         } catch (NoSuchElementException e) {
             return ResponseEntity.notFound().build();
+        } catch (CannotAcquireLockException e) {
+            return ResponseEntity.status(HttpStatus.LOCKED).build();
+        } catch (ConcurrencyFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @Operation(summary = "Resolve a tournament",
+            description = "Resolve a list of attacks in order within one transaction, reporting the winner of each")
+    @ApiResponse(responseCode = "200", description = "Tournament resolved, see the report for invalid battles")
+    @ApiResponse(responseCode = "406", description = "Not acceptable (too many battles)")
+    @PostMapping("/tournament")
+    public ResponseEntity<TournamentReport> attackAll(
+            @RequestBody List<Battle> battles,
+            @Parameter(description = "Key that makes retries of this request return the first reply")
+            @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey) {
+        String request = idempotencyKey == null ? null : IdempotencyCache.fingerprint("tournament", battles.stream()
+                .map(battle -> battle == null ? null : battle.getAttackerId() + " " + battle.getTargetId())
+                .toList());
+        return idempotencyCache.execute(idempotencyKey, request, () -> {
+            try {
+                TournamentReport report = kingdomService.attackAll(battles);
+                return ResponseEntity.ok(report);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+            }
+        });
+    }
+
+    /**
+     * Whether a request about every kingdom is answered for the whole cluster. Nodes fanning such a
+     * request out send the cluster token, and only want the kingdoms of the node they ask.
+     */
+    private boolean clusterWide(String token) {
+        return ring != null && !ring.isPeer(token);
+    }
+
+    /**
+     * Reads kingdoms one at a time from a JSON array or a sequence of root-level objects. Kingdoms
+     * that are well-formed JSON but cannot be mapped are returned as null. Malformed JSON ends the
+     * batch with an {@link UncheckedIOException}, thrown by the call that reaches it, so every
+     * kingdom before it is still returned.
+     */
+    private class KingdomIterator implements Iterator<Kingdom> {
+        private final JsonParser parser;
+        private final boolean array;
+        private JsonToken token;
+        private IOException failure;
+
+        private KingdomIterator(JsonParser parser) throws IOException {
+            this.parser = parser;
+            this.token = parser.nextToken();
+            this.array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (failure != null) {
+                throw new UncheckedIOException(failure);
+            }
+            return token != null && !(array && token == JsonToken.END_ARRAY);
+        }
+
+        @Override
+        public Kingdom next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(parser);
+            } catch (IOException e) {
+                failure = e;
+                throw new UncheckedIOException(e);
+            }
+            try {
+                token = parser.nextToken();
+            } catch (IOException e) {
+                // Reported on the next call, after the kingdom already read
+                failure = e;
+            }
+            try {
+                return objectMapper.treeToValue(node, Kingdom.class);
+            } catch (JsonProcessingException e) {
+                return null;
+            }
         }
     }
-}
\ No newline at end of file
+}
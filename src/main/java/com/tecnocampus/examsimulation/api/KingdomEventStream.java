@@ -0,0 +1,214 @@
+package com.tecnocampus.examsimulation.api;
+
+import com.tecnocampus.examsimulation.api.application.KingdomChangedEvent;
+import com.tecnocampus.examsimulation.api.application.KingdomService;
+import com.tecnocampus.examsimulation.api.application.WorldChangedEvent;
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Server-sent events for committed kingdom changes, per kingdom and for the leaderboard.
+ *
+ * Each subscriber holds at most one pending event: a newer change replaces the one not yet sent,
+ * so a slow dashboard skips intermediate states instead of queueing them. Listeners only store the
+ * event and hand sending to a virtual thread, one at a time per subscriber, so a subscriber that
+ * does not read can never hold up the transaction that published the change.
+ */
+@Component
+public class KingdomEventStream {
+    private static final Object RELOAD = new Object();
+
+    private final KingdomService kingdomService;
+    private final long timeoutMillis;
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Map<String, Set<Subscriber>> kingdomSubscribers = new ConcurrentHashMap<>();
+    private final Set<Subscriber> leaderboardSubscribers = ConcurrentHashMap.newKeySet();
+
+    private final Counter sent;
+    private final Counter coalesced;
+
+    public KingdomEventStream(KingdomService kingdomService,
+                              @Value("${kingdom.events.timeout:30m}") Duration timeout,
+                              MeterRegistry meterRegistry) {
+        this.kingdomService = kingdomService;
+        this.timeoutMillis = timeout.toMillis();
+        this.sent = eventCounter(meterRegistry, "sent");
+        this.coalesced = eventCounter(meterRegistry, "coalesced");
+        Gauge.builder("kingdom.events.subscribers", this, KingdomEventStream::subscribers)
+                .description("Open kingdom and leaderboard event streams")
+                .register(meterRegistry);
+    }
+
+    private static Counter eventCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("kingdom.events")
+                .description("Change events pushed to subscribers (coalesced: replaced by a newer one before being sent)")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Streams the kingdom, now and after every change, until it is deleted.
+     *
+     * @throws NoSuchElementException if the kingdom does not exist
+     */
+    public SseEmitter subscribeKingdom(String id) {
+        kingdomService.getKingdom(id);
+        Subscriber subscriber = new Subscriber("kingdom", () -> kingdomService.getKingdom(id));
+        kingdomSubscribers.computeIfAbsent(id, key -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        subscriber.emitter.onCompletion(() -> unsubscribe(id, subscriber));
+        // Read when sent, so a change committed while subscribing is not missed
+        subscriber.reload();
+        return subscriber.emitter;
+    }
+
+    /**
+     * Streams the {@code n} richest kingdoms, now and after every change.
+     *
+     * @throws IllegalArgumentException if n is out of range
+     */
+    public SseEmitter subscribeLeaderboard(int n) {
+        kingdomService.getTopKingdoms(n);
+        Subscriber subscriber = new Subscriber("leaderboard", () -> kingdomService.getTopKingdoms(n));
+        leaderboardSubscribers.add(subscriber);
+        subscriber.emitter.onCompletion(() -> leaderboardSubscribers.remove(subscriber));
+        subscriber.reload();
+        return subscriber.emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onKingdomChanged(KingdomChangedEvent event) {
+        Set<Subscriber> subscribers = kingdomSubscribers.get(event.id());
+        if (subscribers != null) {
+            for (Subscriber subscriber : subscribers) {
+                if (event.deleted()) {
+                    subscriber.close();
+                } else {
+                    subscriber.offer(event.kingdom());
+                }
+            }
+        }
+        leaderboardSubscribers.forEach(Subscriber::reload);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onWorldChanged(WorldChangedEvent event) {
+        kingdomSubscribers.values().forEach(subscribers -> subscribers.forEach(Subscriber::reload));
+        leaderboardSubscribers.forEach(Subscriber::reload);
+    }
+
+    @PreDestroy
+    public void close() {
+        kingdomSubscribers.values().forEach(subscribers -> subscribers.forEach(Subscriber::close));
+        leaderboardSubscribers.forEach(Subscriber::close);
+        senders.shutdown();
+    }
+
+    private void unsubscribe(String id, Subscriber subscriber) {
+        kingdomSubscribers.computeIfPresent(id, (key, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    private int subscribers() {
+        return kingdomSubscribers.values().stream().mapToInt(Set::size).sum() + leaderboardSubscribers.size();
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter = new SseEmitter(timeoutMillis);
+        private final String eventName;
+        private final Supplier<Object> reloader;
+        private final AtomicReference<Object> pending = new AtomicReference<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean closing;
+        private volatile boolean done;
+        // Only used by the sending thread
+        private long sentVersion = -1;
+
+        private Subscriber(String eventName, Supplier<Object> reloader) {
+            this.eventName = eventName;
+            this.reloader = reloader;
+            emitter.onTimeout(emitter::complete);
+            emitter.onError(error -> emitter.complete());
+        }
+
+        /**
+         * Sends {@code payload}, replacing any event not sent yet.
+         */
+        void offer(Object payload) {
+            if (pending.getAndSet(payload) != null) {
+                coalesced.increment();
+            }
+            schedule();
+        }
+
+        /**
+         * Sends the current state, read when the event is sent.
+         */
+        void reload() {
+            offer(RELOAD);
+        }
+
+        void close() {
+            closing = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (!done && sending.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                for (Object payload = pending.getAndSet(null); payload != null; payload = pending.getAndSet(null)) {
+                    Object data = payload == RELOAD ? reloader.get() : payload;
+                    if (data instanceof Kingdom kingdom) {
+                        // Commits of concurrent transactions can be announced out of order
+                        if (kingdom.getVersion() < sentVersion) {
+                            continue;
+                        }
+                        sentVersion = kingdom.getVersion();
+                    }
+                    emitter.send(SseEmitter.event().name(eventName).data(data));
+                    sent.increment();
+                }
+                if (closing) {
+                    done = true;
+                    emitter.complete();
+                }
+            } catch (IOException | RuntimeException e) {
+                // The client went away, or the kingdom no longer exists
+                done = true;
+                emitter.complete();
+            } finally {
+                sending.set(false);
+            }
+            // Pick up events offered after the last check but before sending was cleared
+            if (pending.get() != null || closing) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.tecnocampus.examsimulation.api;
+
+import com.tecnocampus.examsimulation.api.application.KingdomRing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Forwards requests about a kingdom owned by another node of the cluster to that node and relays
+ * its reply, so clients can call any node. Requests are matched by the kingdom id that follows
+ * {@code /kingdoms/}. Requests about every kingdom (the list, export, richest, top and world
+ * production) are fanned out to every node by {@link KingdomController} instead. Replies are
+ * copied as they arrive, so event streams are relayed too.
+ */
+@Component
+@ConditionalOnProperty(name = "kingdom.cluster.enabled", havingValue = "true")
+public class KingdomRoutingFilter extends OncePerRequestFilter {
+    private static final Pattern KINGDOM_PATH = Pattern.compile("^/kingdoms/([0-9a-fA-F-]{36})(/.*)?$");
+    // Set by the HTTP client or the servlet container for each hop
+    private static final Set<String> HOP_HEADERS = Set.of("connection", "content-length", "date", "expect", "from",
+            "host", "keep-alive", "transfer-encoding", "upgrade", "via", "warning");
+
+    private final KingdomRing ring;
+    private final HttpClient client;
+    private final Counter forwarded;
+    private final Counter failed;
+
+    public KingdomRoutingFilter(KingdomRing ring, @Value("${kingdom.cluster.timeout:5s}") Duration timeout,
+                                MeterRegistry meterRegistry) {
+        this.ring = ring;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+        this.forwarded = forwardedCounter(meterRegistry, "forwarded");
+        this.failed = forwardedCounter(meterRegistry, "failed");
+    }
+
+    private static Counter forwardedCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("kingdom.cluster.requests")
+                .description("Requests for kingdoms of other nodes by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (ring.isPeer(request.getHeader(KingdomRing.TOKEN_HEADER))) {
+            return true;
+        }
+        Matcher matcher = KINGDOM_PATH.matcher(request.getRequestURI().substring(request.getContextPath().length()));
+        return !matcher.matches() || ring.isLocal(matcher.group(1).toLowerCase());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String id = KINGDOM_PATH.matcher(path).replaceFirst("$1").toLowerCase();
+        String query = request.getQueryString();
+        HttpRequest.Builder forward = HttpRequest.newBuilder(URI.create(ring.owner(id) + path
+                        + (query != null ? "?" + query : "")))
+                .header(KingdomRing.TOKEN_HEADER, ring.token());
+        for (String name : Collections.list(request.getHeaderNames())) {
+            if (!HOP_HEADERS.contains(name.toLowerCase()) && !name.equalsIgnoreCase(KingdomRing.TOKEN_HEADER)) {
+                for (String value : Collections.list(request.getHeaders(name))) {
+                    forward.header(name, value);
+                }
+            }
+        }
+        byte[] body = request.getInputStream().readAllBytes();
+        forward.method(request.getMethod(), body.length > 0
+                ? HttpRequest.BodyPublishers.ofByteArray(body)
+                : HttpRequest.BodyPublishers.noBody());
+
+        HttpResponse<InputStream> reply;
+        try {
+            reply = client.send(forward.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            failed.increment();
+            response.sendError(HttpStatus.BAD_GATEWAY.value(), "Node owning the kingdom is unreachable");
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.increment();
+            response.sendError(HttpStatus.BAD_GATEWAY.value(), "Interrupted forwarding to the node owning the kingdom");
+            return;
+        }
+        forwarded.increment();
+        relay(reply, response);
+    }
+
+    private static void relay(HttpResponse<InputStream> reply, HttpServletResponse response) throws IOException {
+        response.setStatus(reply.statusCode());
+        for (Map.Entry<String, List<String>> header : reply.headers().map().entrySet()) {
+            if (!HOP_HEADERS.contains(header.getKey().toLowerCase())) {
+                header.getValue().forEach(value -> response.addHeader(header.getKey(), value));
+            }
+        }
+        try (InputStream in = reply.body()) {
+            OutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+                // Flushed per read so event streams are not held back in the buffer
+                out.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.tecnocampus.examsimulation.api;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the requests in flight with a limit that follows the latency of the kingdom repository,
+ * read from its {@code kingdom.repository} timers. Every {@code interval}, the first request to
+ * arrive compares the mean repository call time since the previous sample with {@code target}:
+ * above it the limit is cut by a quarter, down to {@code minConcurrency}, and otherwise it grows by
+ * one, up to {@code maxConcurrency}. Requests over the limit are rejected at once instead of
+ * queueing for a database connection and making the latency worse.
+ */
+public final class LoadShedder {
+    private final MeterRegistry meterRegistry;
+    private final long targetNanos;
+    private final long intervalNanos;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong nextSample;
+    private volatile int limit;
+    private volatile double lastLatencyNanos;
+    private long sampledCount;
+    private double sampledNanos;
+
+    public LoadShedder(MeterRegistry meterRegistry, Duration target, Duration interval, int minConcurrency,
+                       int maxConcurrency) {
+        if (minConcurrency < 1 || maxConcurrency < minConcurrency) {
+            throw new IllegalArgumentException("Concurrency limits must satisfy 1 <= min <= max");
+        }
+        this.meterRegistry = meterRegistry;
+        this.targetNanos = target.toNanos();
+        this.intervalNanos = interval.toNanos();
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.limit = maxConcurrency;
+        this.nextSample = new AtomicLong(System.nanoTime() + intervalNanos);
+    }
+
+    /**
+     * Admits a request if fewer than the current limit are in flight; an admitted request must
+     * call {@link #release()} when it completes.
+     */
+    public boolean tryAcquire() {
+        sampleIfDue();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Mean repository call time in the last sample, in milliseconds.
+     */
+    public double repositoryLatencyMillis() {
+        return lastLatencyNanos / 1e6;
+    }
+
+    private void sampleIfDue() {
+        long now = System.nanoTime();
+        long due = nextSample.get();
+        // Only the request that moves the deadline samples, the others go on
+        if (now - due < 0 || !nextSample.compareAndSet(due, now + intervalNanos)) {
+            return;
+        }
+        long count = 0;
+        double totalNanos = 0;
+        for (Timer timer : meterRegistry.find("kingdom.repository").timers()) {
+            count += timer.count();
+            totalNanos += timer.totalTime(TimeUnit.NANOSECONDS);
+        }
+        long calls = count - sampledCount;
+        double latency = calls > 0 ? (totalNanos - sampledNanos) / calls : 0;
+        sampledCount = count;
+        sampledNanos = totalNanos;
+        if (calls == 0) {
+            return;
+        }
+        lastLatencyNanos = latency;
+        limit = latency > targetNanos
+                ? Math.max(minConcurrency, limit - Math.max(1, limit / 4))
+                : Math.min(maxConcurrency, limit + 1);
+    }
+}
@@ -0,0 +1,175 @@
+package com.tecnocampus.examsimulation.api;
+
+import com.tecnocampus.examsimulation.api.application.ReactiveKingdomService;
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import com.tecnocampus.examsimulation.api.domain.ProductionReport;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The routes and status codes of {@link KingdomController} on WebFlux, active with
+ * {@code spring.main.web-application-type=reactive}. No request holds a thread while it waits for
+ * the database, and lists and the export are written as the rows arrive, at the pace the client
+ * reads them.
+ *
+ * Bulk creation, simulation, tournaments, event streams, idempotency keys, binary wire formats
+ * and the cluster are only served by the servlet stack.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/kingdoms")
+@Tag(name = "Kingdom Management", description = "Endpoints for managing medieval kingdoms")
+public class ReactiveKingdomController {
+    private final ReactiveKingdomService kingdomService;
+
+    public ReactiveKingdomController(ReactiveKingdomService kingdomService) {
+        this.kingdomService = kingdomService;
+    }
+
+    /**
+     * Bodies rejected by {@code @Valid} get the 406 of every other invalid parameter, not Spring's 400.
+     */
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<Void> invalidBody() {
+        return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+    }
+
+    @Operation(summary = "Create a new kingdom", description = "Creates a kingdom with initial resources")
+    @ApiResponse(responseCode = "201", description = "Kingdom successfully created")
+    @ApiResponse(responseCode = "406", description = "Not acceptable (resources out of range)")
+    @PostMapping
+    public Mono<ResponseEntity<Kingdom>> createKingdom(@Valid @RequestBody Kingdom kingdom) {
+        return kingdomService.createKingdom(kingdom)
+                .map(createdKingdom -> ResponseEntity.status(HttpStatus.CREATED).body(createdKingdom));
+    }
+
+    @Operation(summary = "Start daily production", description = "Process daily production cycle")
+    @ApiResponse(responseCode = "200", description = "Production completed successfully")
+    @ApiResponse(responseCode = "404", description = "Kingdom not found")
+    @ApiResponse(responseCode = "406", description = "Not acceptable (no citizens left)")
+    @PostMapping("/{id}")
+    public Mono<ResponseEntity<Kingdom>> startDailyProduction(
+            @Parameter(description = "ID of the kingdom to process") @PathVariable String id) {
+        return kingdomService.startDailyProduction(id)
+                .map(ResponseEntity::ok)
+                .onErrorResume(NoSuchElementException.class, e -> Mono.just(ResponseEntity.notFound().build()))
+                .onErrorResume(IllegalStateException.class,
+                        e -> Mono.just(ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build()));
+    }
+
+    @Operation(summary = "Start world production", description = "Process the daily production cycle for every kingdom")
+    @ApiResponse(responseCode = "200", description = "Production completed for all kingdoms")
+    @PostMapping("/production")
+    public Mono<ResponseEntity<ProductionReport>> startWorldProduction() {
+        return kingdomService.startWorldProduction().map(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Invest resources", description = "Convert gold to food or citizens")
+    @ApiResponse(responseCode = "200", description = "Investment successful")
+    @ApiResponse(responseCode = "404", description = "Kingdom not found")
+    @ApiResponse(responseCode = "406", description = "Not enough gold or invalid investment type")
+    @PostMapping("/{id}/invest")
+    public Mono<ResponseEntity<Kingdom>> invest(
+            @Parameter(description = "ID of the kingdom") @PathVariable String id,
+            @Parameter(description = "Type of investment (food or citizens)", example = "food")
+            @RequestParam String type,
+            @Valid @RequestBody Kingdom.InvestRequest investRequest) {
+        return kingdomService.invest(id, type, investRequest.getGold())
+                .map(ResponseEntity::ok)
+                .onErrorResume(NoSuchElementException.class, e -> Mono.just(ResponseEntity.notFound().build()))
+                .onErrorResume(IllegalArgumentException.class,
+                        e -> Mono.just(ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build()));
+    }
+
+    @Operation(summary = "List kingdoms", description = "Retrieve a page of kingdoms ordered by id")
+    @ApiResponse(responseCode = "200", description = "Kingdoms after the given id")
+    @ApiResponse(responseCode = "406", description = "Not acceptable (limit out of range)")
+    @GetMapping
+    public ResponseEntity<Flux<Kingdom>> getKingdoms(
+            @Parameter(description = "Return kingdoms after this id (last id of the previous page)")
+            @RequestParam(required = false) String after,
+            @Parameter(description = "Maximum number of kingdoms to return", example = "100")
+            @RequestParam(defaultValue = "100") int limit) {
+        try {
+            Flux<Kingdom> kingdoms = kingdomService.getKingdoms(after, limit);
+            return ResponseEntity.ok(kingdoms);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+        }
+    }
+
+    @Operation(summary = "Export kingdoms", description = "Stream every kingdom as newline-delimited JSON")
+    @ApiResponse(responseCode = "200", description = "Kingdoms streamed")
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Kingdom> exportKingdoms() {
+        return kingdomService.exportKingdoms();
+    }
+
+    @Operation(summary = "Get kingdom status", description = "Retrieve current kingdom status")
+    @ApiResponse(responseCode = "200", description = "Kingdom found")
+    @ApiResponse(responseCode = "404", description = "Kingdom not found")
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<Kingdom>> getKingdom(
+            @Parameter(description = "ID of the kingdom") @PathVariable String id) {
+        return kingdomService.getKingdom(id)
+                .map(ResponseEntity::ok)
+                .onErrorResume(NoSuchElementException.class, e -> Mono.just(ResponseEntity.notFound().build()));
+    }
+
+    @Operation(summary = "Get richest kingdom", description = "Retrieve the kingdom with most gold")
+    @ApiResponse(responseCode = "200", description = "Kingdom found")
+    @ApiResponse(responseCode = "404", description = "No kingdoms exist")
+    @GetMapping("/richest")
+    public Mono<ResponseEntity<Kingdom>> getRichestKingdom() {
+        return kingdomService.getRichestKingdom()
+                .map(ResponseEntity::ok)
+                .onErrorResume(NoSuchElementException.class, e -> Mono.just(ResponseEntity.notFound().build()));
+    }
+
+    @Operation(summary = "Get richest kingdoms", description = "Retrieve the n kingdoms with most gold")
+    @ApiResponse(responseCode = "200", description = "Kingdoms ordered by gold")
+    @ApiResponse(responseCode = "406", description = "Not acceptable (n out of range)")
+    @GetMapping("/top")
+    public ResponseEntity<Flux<Kingdom>> getTopKingdoms(
+            @Parameter(description = "Number of kingdoms to return", example = "10")
+            @RequestParam(defaultValue = "10") int n) {
+        try {
+            Flux<Kingdom> kingdoms = kingdomService.getTopKingdoms(n);
+            return ResponseEntity.ok(kingdoms);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+        }
+    }
+
+    @Operation(summary = "Attack another kingdom", description = "Initiate attack between kingdoms")
+    @ApiResponse(responseCode = "200", description = "Attack completed")
+    @ApiResponse(responseCode = "404", description = "Kingdom not found")
+    @ApiResponse(responseCode = "406", description = "Not acceptable (a kingdom cannot attack itself)")
+    @ApiResponse(responseCode = "409", description = "Kingdoms kept changing concurrently, retry later")
+    @PostMapping("/{id}/attack/{targetId}")
+    public Mono<ResponseEntity<Kingdom>> attack(
+            @Parameter(description = "ID of attacking kingdom") @PathVariable String id,
+            @Parameter(description = "ID of target kingdom") @PathVariable String targetId) {
+        return kingdomService.attack(id, targetId)
+                .map(ResponseEntity::ok)
+                .onErrorResume(NoSuchElementException.class, e -> Mono.just(ResponseEntity.notFound().build()))
+                .onErrorResume(IllegalArgumentException.class,
+                        e -> Mono.just(ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build()))
+                .onErrorResume(ConcurrencyFailureException.class,
+                        e -> Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).build()));
+    }
+}
@@ -0,0 +1,59 @@
+package com.tecnocampus.examsimulation.api;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Token buckets of {@code burst} tokens refilled at {@code ratePerSecond}, one per key, in a fixed
+ * table of {@code slots} buckets indexed by key hash, so memory does not grow with the number of
+ * clients or kingdoms. Keys whose hashes collide share a bucket, which only makes their limit
+ * stricter.
+ *
+ * A bucket is stored as the single time at which it will be full again (the generic cell rate
+ * algorithm): taking a token pushes that time one refill interval further, and is refused if it
+ * would leave the bucket more than {@code burst} intervals behind. A take is one compare-and-set,
+ * without locks.
+ */
+public final class TokenBuckets {
+    private final AtomicLongArray fullAt;
+    private final int mask;
+    private final long interval;
+    private final long tolerance;
+    // Times are relative to this, so an untouched slot (0) is a full bucket
+    private final long origin = System.nanoTime();
+
+    public TokenBuckets(double ratePerSecond, int burst, int slots) {
+        if (ratePerSecond <= 0 || burst < 1 || slots < 1) {
+            throw new IllegalArgumentException("rate, burst and slots must be positive");
+        }
+        // Rounded up to a power of two, so the slot is a mask of the hash
+        int size = slots == 1 ? 1 : Integer.highestOneBit(slots - 1) << 1;
+        this.fullAt = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.interval = Math.max(1, (long) (1e9 / ratePerSecond));
+        this.tolerance = interval * burst;
+    }
+
+    /**
+     * Takes a token from the bucket of {@code key}. Returns 0 if there was one, or else the
+     * nanoseconds until there will be.
+     */
+    public long tryTake(String key) {
+        int slot = slot(key);
+        long now = System.nanoTime() - origin;
+        while (true) {
+            long current = fullAt.get(slot);
+            long next = Math.max(current, now) + interval;
+            if (next - now > tolerance) {
+                return next - now - tolerance;
+            }
+            if (fullAt.compareAndSet(slot, current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private int slot(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,1190 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import com.tecnocampus.examsimulation.api.domain.ProductionReport;
+import io.micrometer.core.annotation.Timed;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
+
+/**
+ * Kingdoms kept in memory as primitive columns, one slot per kingdom, with ids stored as two longs
+ * and found through an open-addressing index. Pages are read from an index of the slots in id order
+ * and the richest kingdoms from one in gold order, both blocks of slot numbers, so there is no
+ * object per kingdom. A kingdom costs about 44 bytes of columns, 40 to 80 bytes in the id index
+ * (kept between a quarter and half full) and 8 to 16 bytes in the two ordered indexes: 90 to 140
+ * bytes, plus the spare room of columns that double when they fill up.
+ *
+ * Transactions behave like they do on the table. Writes and {@link #findByIdForUpdate(String)} take
+ * the row lock of the kingdom, one of {@value #ROW_STRIPES} stripes hashed from its id, and keep it
+ * until the transaction completes. Changes are buffered per transaction, seen by its own reads, and
+ * applied to the columns when it commits; a rollback discards them. The store's read/write lock is
+ * only held while the columns are read or the changes applied, so a transaction holding a kingdom
+ * does not stall the others. Outside transactions every write commits on its own.
+ *
+ * With {@code kingdom.journal.enabled} every change is also logged to a {@link KingdomJournal} and
+ * the columns are rebuilt from it on startup. A write returns once its record is on disk.
+ *
+ * With {@code kingdom.write-behind.enabled} the columns are loaded from the kingdoms table instead
+ * and changes are written back to it in the background by {@link KingdomWriteBehind}. Both cannot
+ * be combined: each is the source the columns are rebuilt from.
+ */
+@Repository
+@Timed(value = "kingdom.repository", histogram = true)
+@ConditionalOnProperty(name = "kingdom.storage", havingValue = "columnar")
+public class ColumnarKingdomRepository implements KingdomRepository {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int CHUNK = 1024;
+    private static final int ID_LENGTH = 36;
+    private static final int ROW_STRIPES = 1024;
+    private static final long ROW_LOCK_TIMEOUT_SECONDS = 10;
+    private static final Comparator<UUID> UNSIGNED_ORDER = (a, b) -> compareIds(a.getMostSignificantBits(),
+            a.getLeastSignificantBits(), b.getMostSignificantBits(), b.getLeastSignificantBits());
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] rowLocks = new ReentrantLock[ROW_STRIPES];
+
+    private long[] idHigh = new long[INITIAL_CAPACITY];
+    private long[] idLow = new long[INITIAL_CAPACITY];
+    private int[] gold = new int[INITIAL_CAPACITY];
+    private int[] citizens = new int[INITIAL_CAPACITY];
+    private int[] food = new int[INITIAL_CAPACITY];
+    private int[] dateOfCreation = new int[INITIAL_CAPACITY];
+    private long[] version = new long[INITIAL_CAPACITY];
+    private int[] lastSettled = new int[INITIAL_CAPACITY];
+    private int size;
+    private final IdIndex index = new IdIndex();
+    private final OrderIndex idOrder = new OrderIndex(this::compareIds);
+    // Richest first, ties broken by the smallest id
+    private final OrderIndex goldOrder = new OrderIndex((a, b) -> {
+        int byGold = Integer.compare(gold[b], gold[a]);
+        return byGold != 0 ? byGold : compareIds(a, b);
+    });
+
+    private final KingdomJournal journal;
+    // Sequence of the last record logged, written under the write lock
+    private long journaled;
+    private final KingdomWriteBehind writeBehind;
+    private final KingdomIds ids;
+
+    public ColumnarKingdomRepository(ObjectProvider<KingdomJournal> journal, ObjectProvider<KingdomWriteBehind> writeBehind,
+                                     KingdomIds ids) {
+        this.journal = journal.getIfAvailable();
+        this.writeBehind = writeBehind.getIfAvailable();
+        this.ids = ids;
+        for (int i = 0; i < ROW_STRIPES; i++) {
+            rowLocks[i] = new ReentrantLock();
+        }
+        if (this.journal != null && this.writeBehind != null) {
+            throw new IllegalStateException("kingdom.journal.enabled and kingdom.write-behind.enabled cannot be combined");
+        }
+    }
+
+    /**
+     * Rebuilds the columns from the journal or the kingdoms table, when either is enabled, before
+     * serving any request.
+     */
+    @PostConstruct
+    public void recover() {
+        if (writeBehind != null) {
+            lock.writeLock().lock();
+            try {
+                writeBehind.load(this::restore);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            writeBehind.start();
+            return;
+        }
+        if (journal == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            journal.recover(new KingdomJournal.Replay() {
+                @Override
+                public void put(long high, long low, int gold, int citizens, int food, int dateOfCreation, long version,
+                                int lastSettled) {
+                    restore(high, low, gold, citizens, food, dateOfCreation, version, lastSettled);
+                }
+
+                @Override
+                public void delete(long high, long low) {
+                    int slot = index.get(high, low);
+                    if (slot >= 0) {
+                        remove(slot);
+                    }
+                }
+
+                @Override
+                public void worldProduction(int day) {
+                    produceAll(day);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+        journal.start(this::snapshot);
+    }
+
+    @Override
+    public Kingdom save(Kingdom kingdom) {
+        checkColumns(kingdom);
+        return write(transaction -> {
+            if (kingdom.getId() == null) {
+                transaction.insert(kingdom);
+            } else {
+                transaction.update(kingdom);
+            }
+            return kingdom;
+        });
+    }
+
+    @Override
+    public List<Kingdom> insertAll(List<Kingdom> kingdoms) {
+        kingdoms.forEach(this::checkColumns);
+        return write(transaction -> {
+            kingdoms.forEach(transaction::insert);
+            return kingdoms;
+        });
+    }
+
+    @Override
+    public void updateAll(List<Kingdom> kingdoms) {
+        kingdoms.forEach(this::checkColumns);
+        write(transaction -> {
+            kingdoms.forEach(transaction::update);
+            return null;
+        });
+    }
+
+    /**
+     * Inside a transaction that has changed kingdoms, reads its own changes first.
+     */
+    @Override
+    public Optional<Kingdom> findById(String id) {
+        Transaction transaction = currentTransaction();
+        if (transaction != null) {
+            UUID uuid = parse(id);
+            return uuid == null ? Optional.empty() : Optional.ofNullable(transaction.row(uuid));
+        }
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(id);
+            return slot < 0 ? Optional.empty() : Optional.of(toKingdom(slot, id));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Kingdom> findByIdForUpdate(String id) {
+        UUID uuid = parse(id);
+        if (uuid == null) {
+            return Optional.empty();
+        }
+        return write(transaction -> Optional.ofNullable(transaction.lockRow(uuid)));
+    }
+
+    /**
+     * Row stripes are taken in stripe order, and the kingdoms returned in id order like the table's.
+     */
+    @Override
+    public List<Kingdom> findAllByIdForUpdate(Collection<String> ids) {
+        List<UUID> sorted = ids.stream().map(ColumnarKingdomRepository::parse).filter(Objects::nonNull).distinct()
+                .sorted(UNSIGNED_ORDER).toList();
+        return write(transaction -> {
+            sorted.stream().mapToInt(ColumnarKingdomRepository::stripe).distinct().sorted()
+                    .forEach(transaction::lockStripe);
+            List<Kingdom> kingdoms = new ArrayList<>(sorted.size());
+            for (UUID id : sorted) {
+                Kingdom kingdom = transaction.row(id);
+                if (kingdom != null) {
+                    kingdoms.add(kingdom);
+                }
+            }
+            return kingdoms;
+        });
+    }
+
+    /**
+     * Scans, like {@link #findPage(String, int)} and {@link #forEach(Consumer)}, only see committed
+     * kingdoms.
+     */
+    @Override
+    public List<Kingdom> findAll() {
+        List<Kingdom> kingdoms = new ArrayList<>();
+        forEach(kingdoms::add);
+        return kingdoms;
+    }
+
+    /**
+     * Seeks {@code after} in the id order index and reads the next {@code limit} kingdoms, so a page
+     * costs O(log n + limit) wherever it starts.
+     */
+    @Override
+    public List<Kingdom> findPage(String after, int limit) {
+        IntUnaryOperator afterCursor = slot -> 1;
+        if (after != null) {
+            UUID uuid = parse(after);
+            if (uuid == null) {
+                // Not an id, like the other storages
+                return List.of();
+            }
+            long high = uuid.getMostSignificantBits();
+            long low = uuid.getLeastSignificantBits();
+            afterCursor = slot -> compareIds(idHigh[slot], idLow[slot], high, low);
+        }
+
+        lock.readLock().lock();
+        try {
+            List<Kingdom> page = new ArrayList<>(Math.min(limit, CHUNK));
+            idOrder.forEachFrom(afterCursor, slot -> {
+                page.add(toKingdom(slot));
+                return page.size() < limit;
+            });
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the kingdoms out a chunk at a time, so the consumer never runs under the lock. Kingdoms
+     * deleted or created while iterating may be missed.
+     */
+    @Override
+    public void forEach(Consumer<Kingdom> consumer) {
+        List<Kingdom> chunk = new ArrayList<>(CHUNK);
+        for (int start = 0; ; start += CHUNK) {
+            lock.readLock().lock();
+            try {
+                for (int slot = start; slot < Math.min(size, start + CHUNK); slot++) {
+                    chunk.add(toKingdom(slot));
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (chunk.isEmpty()) {
+                return;
+            }
+            chunk.forEach(consumer);
+            chunk.clear();
+        }
+    }
+
+    /**
+     * Compares the last-settled column under the read lock and only builds the ids of the slots
+     * that are due, without copying any kingdom out.
+     */
+    @Override
+    public List<String> findIdsSettledBefore(LocalDate day) {
+        int before = (int) day.toEpochDay();
+        List<String> due = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < size; slot++) {
+                if (lastSettled[slot] < before) {
+                    due.add(new UUID(idHigh[slot], idLow[slot]).toString());
+                }
+            }
+            return due;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(String id) {
+        UUID uuid = parse(id);
+        if (uuid == null) {
+            return;
+        }
+        write(transaction -> {
+            if (transaction.lockRow(uuid) != null) {
+                transaction.delete(uuid);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        Transaction transaction = currentTransaction();
+        if (transaction != null) {
+            UUID uuid = parse(id);
+            return uuid != null && transaction.row(uuid) != null;
+        }
+        lock.readLock().lock();
+        try {
+            return slotOf(id) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Kingdom> investInFood(String id, int gold) {
+        return change(id, kingdom -> kingdom.getGold() >= gold, kingdom -> {
+            kingdom.setGold(kingdom.getGold() - gold);
+            kingdom.setFood(kingdom.getFood() + 2 * gold);
+        });
+    }
+
+    @Override
+    public Optional<Kingdom> investInCitizens(String id, int gold) {
+        return change(id, kingdom -> kingdom.getGold() >= gold, kingdom -> {
+            kingdom.setGold(kingdom.getGold() - gold);
+            kingdom.setCitizens(kingdom.getCitizens() + gold);
+        });
+    }
+
+    @Override
+    public Optional<Kingdom> produce(String id, LocalDate day) {
+        return change(id, kingdom -> kingdom.getCitizens() > 0 && kingdom.getFood() > 0, kingdom -> {
+            int fed = Math.min(kingdom.getCitizens(), kingdom.getFood());
+            kingdom.setGold(kingdom.getGold() + 2 * fed);
+            kingdom.setCitizens(fed);
+            kingdom.setFood(kingdom.getFood() - fed);
+            kingdom.setLastSettled(day);
+        });
+    }
+
+    @Override
+    public boolean deleteIfStarving(String id) {
+        UUID uuid = parse(id);
+        if (uuid == null) {
+            return false;
+        }
+        return write(transaction -> {
+            Kingdom kingdom = transaction.lockRow(uuid);
+            if (kingdom == null || (kingdom.getCitizens() > 0 && kingdom.getFood() > 0)) {
+                return false;
+            }
+            transaction.delete(uuid);
+            return true;
+        });
+    }
+
+    /**
+     * Applies {@code change} to the kingdom as a new version, holding its row lock, if it exists and
+     * meets {@code condition}, like a guarded UPDATE on the table.
+     */
+    private Optional<Kingdom> change(String id, Predicate<Kingdom> condition, Consumer<Kingdom> change) {
+        UUID uuid = parse(id);
+        if (uuid == null) {
+            return Optional.empty();
+        }
+        return write(transaction -> {
+            Kingdom kingdom = transaction.lockRow(uuid);
+            if (kingdom == null || !condition.test(kingdom)) {
+                return Optional.empty();
+            }
+            change.accept(kingdom);
+            kingdom.setVersion(kingdom.getVersion() + 1);
+            transaction.put(uuid, kingdom);
+            return Optional.of(kingdom);
+        });
+    }
+
+    /**
+     * First entry of the gold order index, ties broken by the smallest id.
+     */
+    @Override
+    public Optional<Kingdom> findRichest() {
+        List<Kingdom> richest = findTop(1);
+        return richest.isEmpty() ? Optional.empty() : Optional.of(richest.get(0));
+    }
+
+    @Override
+    public List<Kingdom> findTop(int n) {
+        lock.readLock().lock();
+        try {
+            List<Kingdom> top = new ArrayList<>(Math.min(n, size));
+            if (n > 0) {
+                goldOrder.forEachFrom(slot -> 1, slot -> {
+                    top.add(toKingdom(slot));
+                    return top.size() < n;
+                });
+            }
+            return top;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Nothing to rebuild, the gold order index is kept up to date as changes are applied.
+     */
+    @Override
+    public void reloadLeaderboard() {
+    }
+
+    /**
+     * Takes every row stripe, so no other transaction changes a kingdom until this one completes,
+     * and counts the outcome from the columns. The production itself runs when the transaction
+     * commits, logged as a single record and replayed by running the same production again, rather
+     * than logging every kingdom it changes. It must be the only change of its transaction.
+     */
+    @Override
+    public ProductionReport applyDailyProductionToAll(LocalDate day) {
+        return write(transaction -> {
+            if (!transaction.isEmpty()) {
+                throw new IllegalStateException("World production must be the only change of its transaction");
+            }
+            for (int stripe = 0; stripe < ROW_STRIPES; stripe++) {
+                transaction.lockStripe(stripe);
+            }
+            transaction.worldProduction = day;
+            lock.readLock().lock();
+            try {
+                return countProduction();
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * The report of {@link #produceAll(int)} on the current columns, without changing them.
+     */
+    private ProductionReport countProduction() {
+        long starved = 0;
+        long deleted = 0;
+        long goldMinted = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (citizens[slot] == 0 || food[slot] == 0) {
+                deleted++;
+                continue;
+            }
+            // Ran out of food, like a kingdom produced on its own
+            if (food[slot] <= citizens[slot]) {
+                starved++;
+            }
+            goldMinted += 2L * Math.min(citizens[slot], food[slot]);
+        }
+        return new ProductionReport(size, starved, deleted, goldMinted);
+    }
+
+    private void produceAll(int day) {
+        // Backwards, so the slot moved into a removed one has already been processed
+        for (int slot = size - 1; slot >= 0; slot--) {
+            if (citizens[slot] == 0 || food[slot] == 0) {
+                writeBehindDelete(slot);
+                remove(slot);
+                continue;
+            }
+            produce(slot, day);
+            writeBehindPut(slot);
+        }
+    }
+
+    private void produce(int slot, int day) {
+        goldOrder.remove(slot);
+        int fed = Math.min(citizens[slot], food[slot]);
+        gold[slot] += 2 * fed;
+        citizens[slot] = fed;
+        food[slot] -= fed;
+        lastSettled[slot] = day;
+        version[slot]++;
+        goldOrder.add(slot);
+    }
+
+    private void snapshot() {
+        Runnable write;
+        lock.writeLock().lock();
+        try {
+            write = journal.snapshot(new KingdomJournal.SnapshotSource() {
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public void write(int slot, ByteBuffer buffer) {
+                    buffer.putLong(idHigh[slot]).putLong(idLow[slot]).putInt(gold[slot]).putInt(citizens[slot])
+                            .putInt(food[slot]).putInt(dateOfCreation[slot]).putLong(version[slot])
+                            .putInt(lastSettled[slot]);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+        write.run();
+    }
+
+    /**
+     * Runs {@code change} on the buffer of the current transaction or, outside transactions, on a
+     * buffer of its own that is applied as soon as it returns.
+     */
+    private <T> T write(Function<Transaction, T> change) {
+        Transaction transaction = currentTransaction();
+        if (transaction == null && TransactionSynchronizationManager.isSynchronizationActive()) {
+            transaction = new Transaction();
+            TransactionSynchronizationManager.bindResource(this, transaction);
+            TransactionSynchronizationManager.registerSynchronization(transaction);
+        }
+        if (transaction != null) {
+            return change.apply(transaction);
+        }
+        Transaction single = new Transaction();
+        try {
+            T result = change.apply(single);
+            single.apply();
+            single.release();
+            single.awaitDurable();
+            return result;
+        } finally {
+            single.release();
+        }
+    }
+
+    /**
+     * The buffer of the current transaction, or null if it has not changed or locked any kingdom.
+     */
+    private Transaction currentTransaction() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        return (Transaction) TransactionSynchronizationManager.getResource(this);
+    }
+
+    /**
+     * The committed kingdom, or null if there is none.
+     */
+    private Kingdom committed(UUID id) {
+        lock.readLock().lock();
+        try {
+            int slot = index.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            return slot < 0 ? null : toKingdom(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a kingdom left by a committed transaction to the columns, with its journal record.
+     * Called under the write lock.
+     */
+    private void applyRow(UUID id, Kingdom row) {
+        long high = id.getMostSignificantBits();
+        long low = id.getLeastSignificantBits();
+        if (row == null) {
+            int slot = index.get(high, low);
+            if (slot >= 0) {
+                recordDelete(slot);
+                remove(slot);
+            }
+            return;
+        }
+        int slot = restore(high, low, row.getGold(), row.getCitizens(), row.getFood(),
+                (int) row.getDateOfCreation().toEpochDay(), row.getVersion(), (int) row.getLastSettled().toEpochDay());
+        recordPut(slot);
+    }
+
+    private static int stripe(UUID id) {
+        return IdIndex.hash(id.getMostSignificantBits(), id.getLeastSignificantBits()) & (ROW_STRIPES - 1);
+    }
+
+    /**
+     * Changes of one transaction, buffered as the kingdoms they leave behind (null for a deleted
+     * one) and applied to the columns together just before it commits, so a rollback only has to
+     * drop them. The row stripes it takes are held until it completes, and a commit that logged to
+     * the journal returns once the records are on disk; a failed fsync reaches the caller.
+     */
+    private final class Transaction implements TransactionSynchronization {
+        private final BitSet held = new BitSet(ROW_STRIPES);
+        private final Map<UUID, Kingdom> rows = new LinkedHashMap<>();
+        // Day of the world production this transaction runs, or null
+        private LocalDate worldProduction;
+        // Journal record to wait for once applied, or -1
+        private long sequence = -1;
+
+        boolean isEmpty() {
+            return rows.isEmpty() && worldProduction == null;
+        }
+
+        /**
+         * The kingdom as this transaction sees it, as a copy the caller may change.
+         */
+        Kingdom row(UUID id) {
+            if (rows.containsKey(id)) {
+                Kingdom row = rows.get(id);
+                return row == null ? null : new Kingdom(row);
+            }
+            return committed(id);
+        }
+
+        Kingdom lockRow(UUID id) {
+            lockStripe(stripe(id));
+            return row(id);
+        }
+
+        /**
+         * Waits at most {@value ColumnarKingdomRepository#ROW_LOCK_TIMEOUT_SECONDS} seconds, so transactions taking stripes in
+         * opposite order fail like a lock timeout in the database instead of deadlocking.
+         */
+        void lockStripe(int stripe) {
+            if (held.get(stripe)) {
+                return;
+            }
+            try {
+                if (!rowLocks[stripe].tryLock(ROW_LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new CannotAcquireLockException("Timed out waiting for a kingdom row lock");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CannotAcquireLockException("Interrupted while waiting for a kingdom row lock", e);
+            }
+            held.set(stripe);
+        }
+
+        void insert(Kingdom kingdom) {
+            UUID id = ids.next();
+            lockStripe(stripe(id));
+            kingdom.setId(id.toString());
+            kingdom.setVersion(0L);
+            put(id, kingdom);
+        }
+
+        void update(Kingdom kingdom) {
+            UUID id = parse(kingdom.getId());
+            Kingdom current = id == null ? null : lockRow(id);
+            if (current == null || !current.getVersion().equals(kingdom.getVersion())) {
+                throw new OptimisticLockingFailureException("Kingdom " + kingdom.getId() + " was modified concurrently");
+            }
+            kingdom.setVersion(current.getVersion() + 1);
+            put(id, new Kingdom(current.getId(), kingdom.getGold(), kingdom.getCitizens(), kingdom.getFood(),
+                    current.getDateOfCreation(), kingdom.getLastSettled(), kingdom.getVersion()));
+        }
+
+        void put(UUID id, Kingdom kingdom) {
+            if (worldProduction != null) {
+                throw new IllegalStateException("World production must be the only change of its transaction");
+            }
+            rows.put(id, new Kingdom(kingdom));
+        }
+
+        void delete(UUID id) {
+            if (worldProduction != null) {
+                throw new IllegalStateException("World production must be the only change of its transaction");
+            }
+            rows.put(id, null);
+        }
+
+        /**
+         * Writes the buffered kingdoms to the columns under the write lock. Every row they touch is
+         * locked by this transaction, so no version has to be checked again.
+         */
+        void apply() {
+            if (isEmpty()) {
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                rows.forEach(ColumnarKingdomRepository.this::applyRow);
+                if (worldProduction != null) {
+                    int day = (int) worldProduction.toEpochDay();
+                    if (journal != null) {
+                        journaled = journal.logWorldProduction(day);
+                    }
+                    produceAll(day);
+                }
+                sequence = journal != null ? journaled : -1;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void release() {
+            for (int stripe = held.nextSetBit(0); stripe >= 0; stripe = held.nextSetBit(stripe + 1)) {
+                rowLocks[stripe].unlock();
+            }
+            held.clear();
+        }
+
+        void awaitDurable() {
+            if (sequence >= 0) {
+                journal.awaitDurable(sequence);
+            }
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(ColumnarKingdomRepository.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(ColumnarKingdomRepository.this, this);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            apply();
+        }
+
+        /**
+         * The row stripes are released before the journal is waited on, so the fsync is shared with
+         * other writers instead of being paid under them.
+         */
+        @Override
+        public void afterCommit() {
+            release();
+            awaitDurable();
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            release();
+            TransactionSynchronizationManager.unbindResourceIfPossible(ColumnarKingdomRepository.this);
+        }
+    }
+
+    private void recordPut(int slot) {
+        if (journal != null) {
+            journaled = journal.logPut(idHigh[slot], idLow[slot], gold[slot], citizens[slot], food[slot],
+                    dateOfCreation[slot], version[slot], lastSettled[slot]);
+        }
+        writeBehindPut(slot);
+    }
+
+    private void recordDelete(int slot) {
+        if (journal != null) {
+            journaled = journal.logDelete(idHigh[slot], idLow[slot]);
+        }
+        writeBehindDelete(slot);
+    }
+
+    /**
+     * Marks the kingdom dirty. World production calls this for every kingdom, as it logs a single
+     * journal record but changes every row of the table.
+     */
+    private void writeBehindPut(int slot) {
+        if (writeBehind != null) {
+            writeBehind.put(idHigh[slot], idLow[slot], gold[slot], citizens[slot], food[slot], dateOfCreation[slot],
+                    version[slot], lastSettled[slot]);
+        }
+    }
+
+    private void writeBehindDelete(int slot) {
+        if (writeBehind != null) {
+            writeBehind.delete(idHigh[slot], idLow[slot]);
+        }
+    }
+
+    /**
+     * Writes a kingdom to its slot, or to a new one, and returns the slot.
+     */
+    private int restore(long high, long low, int gold, int citizens, int food, int dateOfCreation, long version,
+                        int lastSettled) {
+        int slot = index.get(high, low);
+        if (slot < 0) {
+            if (size == idHigh.length) {
+                grow();
+            }
+            slot = size++;
+            idHigh[slot] = high;
+            idLow[slot] = low;
+            index.put(high, low, slot);
+            idOrder.add(slot);
+        } else {
+            goldOrder.remove(slot);
+        }
+        this.gold[slot] = gold;
+        this.citizens[slot] = citizens;
+        this.food[slot] = food;
+        this.dateOfCreation[slot] = dateOfCreation;
+        this.version[slot] = version;
+        this.lastSettled[slot] = lastSettled;
+        goldOrder.add(slot);
+        return slot;
+    }
+
+    private void checkColumns(Kingdom kingdom) {
+        if (kingdom.getLastSettled() == null || (kingdom.getId() == null && kingdom.getDateOfCreation() == null)) {
+            throw new DataIntegrityViolationException("Kingdom has null columns");
+        }
+    }
+
+    /**
+     * Moves the last kingdom into {@code slot} so the columns stay dense.
+     */
+    private void remove(int slot) {
+        idOrder.remove(slot);
+        goldOrder.remove(slot);
+        index.remove(idHigh[slot], idLow[slot]);
+        int last = --size;
+        if (slot != last) {
+            // Before the columns are copied, while they still find the last kingdom's entries
+            idOrder.move(last, slot);
+            goldOrder.move(last, slot);
+            idHigh[slot] = idHigh[last];
+            idLow[slot] = idLow[last];
+            gold[slot] = gold[last];
+            citizens[slot] = citizens[last];
+            food[slot] = food[last];
+            dateOfCreation[slot] = dateOfCreation[last];
+            version[slot] = version[last];
+            lastSettled[slot] = lastSettled[last];
+            index.put(idHigh[slot], idLow[slot], slot);
+        }
+    }
+
+    private void grow() {
+        int capacity = idHigh.length * 2;
+        idHigh = Arrays.copyOf(idHigh, capacity);
+        idLow = Arrays.copyOf(idLow, capacity);
+        gold = Arrays.copyOf(gold, capacity);
+        citizens = Arrays.copyOf(citizens, capacity);
+        food = Arrays.copyOf(food, capacity);
+        dateOfCreation = Arrays.copyOf(dateOfCreation, capacity);
+        version = Arrays.copyOf(version, capacity);
+        lastSettled = Arrays.copyOf(lastSettled, capacity);
+    }
+
+    /**
+     * Reads the two halves of the id straight from its text, without parsing it into a {@link UUID}.
+     */
+    private int slotOf(String id) {
+        if (id == null || id.length() != ID_LENGTH) {
+            return -1;
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < ID_LENGTH; i++) {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return -1;
+                }
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                return -1;
+            }
+            if (i < 18) {
+                high = high << 4 | digit;
+            } else {
+                low = low << 4 | digit;
+            }
+        }
+        return index.get(high, low);
+    }
+
+    private static UUID parse(String id) {
+        if (id == null || id.length() != ID_LENGTH) {
+            return null;
+        }
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private Kingdom toKingdom(int slot) {
+        return toKingdom(slot, new UUID(idHigh[slot], idLow[slot]).toString());
+    }
+
+    /**
+     * The kingdom in {@code slot} looked up by {@code id}, which is reused instead of formatting the
+     * id again if it is already in lower case like {@link UUID#toString()}.
+     */
+    private Kingdom toKingdom(int slot, String id) {
+        for (int i = 0; i < id.length(); i++) {
+            if (Character.isUpperCase(id.charAt(i))) {
+                return toKingdom(slot);
+            }
+        }
+        return new Kingdom(id, gold[slot], citizens[slot], food[slot], LocalDate.ofEpochDay(dateOfCreation[slot]),
+                LocalDate.ofEpochDay(lastSettled[slot]), version[slot]);
+    }
+
+    /**
+     * Ids in the order of their text form, which for UUIDs is the unsigned order of their bits.
+     */
+    private int compareIds(int a, int b) {
+        return compareIds(idHigh[a], idLow[a], idHigh[b], idLow[b]);
+    }
+
+    private static int compareIds(long highA, long lowA, long highB, long lowB) {
+        int byHigh = Long.compareUnsigned(highA, highB);
+        return byHigh != 0 ? byHigh : Long.compareUnsigned(lowA, lowB);
+    }
+
+    private interface SlotOrder {
+        int compare(int a, int b);
+    }
+
+    /**
+     * Slots sorted by the kingdoms in them, in blocks of at most {@value #BLOCK} slot numbers split
+     * when they fill up, so keeping the order costs a binary search and a short array copy per
+     * change. Entries are compared through the columns, which must still hold a kingdom while it is
+     * removed or moved. Called under the store's lock.
+     */
+    private static final class OrderIndex {
+        private static final int BLOCK = 512;
+
+        private final SlotOrder order;
+        private final List<Block> blocks = new ArrayList<>();
+
+        OrderIndex(SlotOrder order) {
+            this.order = order;
+        }
+
+        void add(int slot) {
+            if (blocks.isEmpty()) {
+                blocks.add(new Block(new int[BLOCK], 0));
+            }
+            int b = block(slot);
+            if (blocks.get(b).size == BLOCK) {
+                Block upper = blocks.get(b).split();
+                blocks.add(b + 1, upper);
+                if (order.compare(upper.slots[0], slot) < 0) {
+                    b++;
+                }
+            }
+            Block block = blocks.get(b);
+            int i = block.position(order, slot);
+            System.arraycopy(block.slots, i, block.slots, i + 1, block.size - i);
+            block.slots[i] = slot;
+            block.size++;
+        }
+
+        void remove(int slot) {
+            int b = block(slot);
+            Block block = blocks.get(b);
+            int i = block.position(order, slot);
+            System.arraycopy(block.slots, i + 1, block.slots, i, block.size - i - 1);
+            if (--block.size == 0) {
+                blocks.remove(b);
+            }
+        }
+
+        /**
+         * Renames the entry of {@code from}, whose kingdom is being moved to {@code to}.
+         */
+        void move(int from, int to) {
+            Block block = blocks.get(block(from));
+            block.slots[block.position(order, from)] = to;
+        }
+
+        /**
+         * Hands {@code visitor} the slots that sort after a key, in order, while it returns true.
+         * {@code after} tells where a slot sorts against the key: positive if after it.
+         */
+        void forEachFrom(IntUnaryOperator after, IntPredicate visitor) {
+            int lo = 0;
+            int hi = blocks.size();
+            // First block whose last entry is after the key
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                Block block = blocks.get(mid);
+                if (after.applyAsInt(block.slots[block.size - 1]) > 0) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            for (int b = lo; b < blocks.size(); b++) {
+                Block block = blocks.get(b);
+                int i = 0;
+                if (b == lo) {
+                    int high = block.size;
+                    while (i < high) {
+                        int mid = (i + high) >>> 1;
+                        if (after.applyAsInt(block.slots[mid]) > 0) {
+                            high = mid;
+                        } else {
+                            i = mid + 1;
+                        }
+                    }
+                }
+                for (; i < block.size; i++) {
+                    if (!visitor.test(block.slots[i])) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * The block holding {@code slot}, or where it belongs: the first whose last entry does not
+         * sort before it, or else the last block.
+         */
+        private int block(int slot) {
+            int lo = 0;
+            int hi = blocks.size() - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                Block block = blocks.get(mid);
+                if (order.compare(block.slots[block.size - 1], slot) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private static final class Block {
+            private final int[] slots;
+            private int size;
+
+            Block(int[] slots, int size) {
+                this.slots = slots;
+                this.size = size;
+            }
+
+            /**
+             * Index of the first entry that does not sort before {@code slot}, which is its own
+             * entry if it is in this block.
+             */
+            int position(SlotOrder order, int slot) {
+                int lo = 0;
+                int hi = size;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (order.compare(slots[mid], slot) < 0) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                return lo;
+            }
+
+            /**
+             * Moves the upper half of this full block to a new one.
+             */
+            Block split() {
+                int[] upper = new int[BLOCK];
+                System.arraycopy(slots, BLOCK / 2, upper, 0, BLOCK - BLOCK / 2);
+                size = BLOCK / 2;
+                return new Block(upper, BLOCK - BLOCK / 2);
+            }
+        }
+    }
+
+    /**
+     * Open-addressing hash index from id bits to slot, with linear probing and backward-shift
+     * deletion so it never needs tombstones.
+     */
+    private static final class IdIndex {
+        private static final int EMPTY = -1;
+
+        private long[] keyHigh = new long[INITIAL_CAPACITY * 2];
+        private long[] keyLow = new long[INITIAL_CAPACITY * 2];
+        private int[] slots = filled(INITIAL_CAPACITY * 2);
+        private int count;
+
+        int get(long high, long low) {
+            int mask = slots.length - 1;
+            for (int i = hash(high, low) & mask; slots[i] != EMPTY; i = (i + 1) & mask) {
+                if (keyHigh[i] == high && keyLow[i] == low) {
+                    return slots[i];
+                }
+            }
+            return EMPTY;
+        }
+
+        void put(long high, long low, int slot) {
+            if ((count + 1) * 2 > slots.length) {
+                resize();
+            }
+            int mask = slots.length - 1;
+            int i = hash(high, low) & mask;
+            while (slots[i] != EMPTY) {
+                if (keyHigh[i] == high && keyLow[i] == low) {
+                    slots[i] = slot;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keyHigh[i] = high;
+            keyLow[i] = low;
+            slots[i] = slot;
+            count++;
+        }
+
+        void remove(long high, long low) {
+            int mask = slots.length - 1;
+            int i = hash(high, low) & mask;
+            while (slots[i] != EMPTY && (keyHigh[i] != high || keyLow[i] != low)) {
+                i = (i + 1) & mask;
+            }
+            if (slots[i] == EMPTY) {
+                return;
+            }
+            slots[i] = EMPTY;
+            count--;
+            // Shift back the entries of the probe run that follows, so lookups still find them
+            for (int j = (i + 1) & mask; slots[j] != EMPTY; j = (j + 1) & mask) {
+                int home = hash(keyHigh[j], keyLow[j]) & mask;
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keyHigh[i] = keyHigh[j];
+                    keyLow[i] = keyLow[j];
+                    slots[i] = slots[j];
+                    slots[j] = EMPTY;
+                    i = j;
+                }
+            }
+        }
+
+        private void resize() {
+            long[] oldHigh = keyHigh;
+            long[] oldLow = keyLow;
+            int[] oldSlots = slots;
+            keyHigh = new long[oldSlots.length * 2];
+            keyLow = new long[oldSlots.length * 2];
+            slots = filled(oldSlots.length * 2);
+            count = 0;
+            for (int i = 0; i < oldSlots.length; i++) {
+                if (oldSlots[i] != EMPTY) {
+                    put(oldHigh[i], oldLow[i], oldSlots[i]);
+                }
+            }
+        }
+
+        private static int[] filled(int length) {
+            int[] slots = new int[length];
+            Arrays.fill(slots, EMPTY);
+            return slots;
+        }
+
+        private static int hash(long high, long low) {
+            long h = (high ^ low) * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
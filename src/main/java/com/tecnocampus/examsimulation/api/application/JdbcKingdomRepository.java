@@ -0,0 +1,387 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import com.tecnocampus.examsimulation.api.domain.ProductionReport;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+@Repository
+@Timed(value = "kingdom.repository", histogram = true)
+@ConditionalOnProperty(name = "kingdom.storage", havingValue = "jdbc", matchIfMissing = true)
+public class JdbcKingdomRepository implements KingdomRepository {
+    private static final int IN_LIST_SIZE = 500;
+    // Read by position in KingdomRowMapper
+    private static final String COLUMNS = "id, gold, citizens, food, date_of_creation, version, last_settled";
+
+    private static final KingdomRowMapper ROW_MAPPER = new KingdomRowMapper();
+    // Lookups by id read at most one row, so it is mapped without a list and a stream around it
+    private static final ResultSetExtractor<Kingdom> FIRST_ROW = rs -> rs.next() ? ROW_MAPPER.mapRow(rs, 0) : null;
+    private static final Comparator<UUID> UNSIGNED_ORDER = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final KingdomCache cache;
+    private final KingdomLeaderboard leaderboard;
+    private final KingdomIds ids;
+    private final int fetchSize;
+
+    public JdbcKingdomRepository(JdbcTemplate jdbcTemplate, KingdomCache cache, KingdomLeaderboard leaderboard,
+                                 KingdomIds ids, @Value("${kingdom.stream.fetch-size:500}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cache = cache;
+        this.leaderboard = leaderboard;
+        this.ids = ids;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public Kingdom save(Kingdom kingdom) {
+        long epoch = cache.epoch();
+        if (kingdom.getId() == null) {
+            String sql = "INSERT INTO kingdoms (id, gold, citizens, food, date_of_creation, version, last_settled) "
+                    + "VALUES (?, ?, ?, ?, ?, 0, ?)";
+            UUID id = ids.next();
+            jdbcTemplate.update(sql, id, kingdom.getGold(), kingdom.getCitizens(), kingdom.getFood(), kingdom.getDateOfCreation(),
+                    kingdom.getLastSettled());
+            kingdom.setId(id.toString());
+            kingdom.setVersion(0L);
+        } else {
+            String sql = "UPDATE kingdoms SET gold = ?, citizens = ?, food = ?, last_settled = ?, version = version + 1 "
+                    + "WHERE id = ? AND version = ?";
+            int updated = jdbcTemplate.update(sql, kingdom.getGold(), kingdom.getCitizens(), kingdom.getFood(),
+                    kingdom.getLastSettled(), uuid(kingdom.getId()), kingdom.getVersion());
+            if (updated == 0) {
+                throw new OptimisticLockingFailureException("Kingdom " + kingdom.getId() + " was modified concurrently");
+            }
+            kingdom.setVersion(kingdom.getVersion() + 1);
+        }
+        publishOnCommit(kingdom, epoch);
+        return kingdom;
+    }
+
+    /**
+     * Inserts new kingdoms with a single JDBC batch and assigns their ids.
+     */
+    @Override
+    public List<Kingdom> insertAll(List<Kingdom> kingdoms) {
+        long epoch = cache.epoch();
+        String sql = "INSERT INTO kingdoms (id, gold, citizens, food, date_of_creation, version, last_settled) "
+                + "VALUES (?, ?, ?, ?, ?, 0, ?)";
+        for (Kingdom kingdom : kingdoms) {
+            kingdom.setId(ids.next().toString());
+            kingdom.setVersion(0L);
+        }
+        jdbcTemplate.batchUpdate(sql, kingdoms, kingdoms.size(), (ps, kingdom) -> {
+            ps.setObject(1, uuid(kingdom.getId()));
+            ps.setInt(2, kingdom.getGold());
+            ps.setInt(3, kingdom.getCitizens());
+            ps.setInt(4, kingdom.getFood());
+            ps.setObject(5, kingdom.getDateOfCreation());
+            ps.setObject(6, kingdom.getLastSettled());
+        });
+        for (Kingdom kingdom : kingdoms) {
+            publishOnCommit(kingdom, epoch);
+        }
+        return kingdoms;
+    }
+
+    @Override
+    public void updateAll(List<Kingdom> kingdoms) {
+        long epoch = cache.epoch();
+        String sql = "UPDATE kingdoms SET gold = ?, citizens = ?, food = ?, last_settled = ?, version = version + 1 "
+                + "WHERE id = ? AND version = ?";
+        int[][] updated = jdbcTemplate.batchUpdate(sql, kingdoms, kingdoms.size(), (ps, kingdom) -> {
+            ps.setInt(1, kingdom.getGold());
+            ps.setInt(2, kingdom.getCitizens());
+            ps.setInt(3, kingdom.getFood());
+            ps.setObject(4, kingdom.getLastSettled());
+            ps.setObject(5, uuid(kingdom.getId()));
+            ps.setLong(6, kingdom.getVersion());
+        });
+        for (int i = 0; i < kingdoms.size(); i++) {
+            if (updated[0][i] == 0) {
+                throw new OptimisticLockingFailureException("Kingdom " + kingdoms.get(i).getId() + " was modified concurrently");
+            }
+        }
+        for (Kingdom kingdom : kingdoms) {
+            kingdom.setVersion(kingdom.getVersion() + 1);
+            publishOnCommit(kingdom, epoch);
+        }
+    }
+
+    /**
+     * Served from {@link KingdomCache} outside transactions. Inside a transaction the row is always
+     * read from the database, so the transaction sees its own uncommitted writes.
+     */
+    @Override
+    public Optional<Kingdom> findById(String id) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return load(id);
+        }
+
+        Kingdom cached = cache.get(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long stamp = cache.stamp(id);
+        Optional<Kingdom> kingdom = load(id);
+        kingdom.ifPresent(k -> cache.fill(k, stamp));
+        return kingdom;
+    }
+
+    private Optional<Kingdom> load(String id) {
+        String sql = "SELECT " + COLUMNS + " FROM kingdoms WHERE id = ?";
+        return Optional.ofNullable(jdbcTemplate.query(sql, FIRST_ROW, uuid(id)));
+    }
+
+    @Override
+    public Optional<Kingdom> findByIdForUpdate(String id) {
+        String sql = "SELECT " + COLUMNS + " FROM kingdoms WHERE id = ? FOR UPDATE";
+        return Optional.ofNullable(jdbcTemplate.query(sql, FIRST_ROW, uuid(id)));
+    }
+
+    /**
+     * Locks in chunks of {@value #IN_LIST_SIZE} ids, sorted so that rows are always locked in the
+     * same order. The database orders UUIDs as unsigned numbers, unlike {@link UUID#compareTo}.
+     */
+    @Override
+    public List<Kingdom> findAllByIdForUpdate(Collection<String> ids) {
+        List<UUID> sorted = ids.stream().map(JdbcKingdomRepository::uuid).filter(Objects::nonNull).distinct()
+                .sorted(UNSIGNED_ORDER).toList();
+        List<Kingdom> kingdoms = new ArrayList<>(sorted.size());
+        for (int start = 0; start < sorted.size(); start += IN_LIST_SIZE) {
+            List<UUID> chunk = sorted.subList(start, Math.min(sorted.size(), start + IN_LIST_SIZE));
+            String sql = "SELECT " + COLUMNS + " FROM kingdoms WHERE id IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?"))
+                    + ") ORDER BY id FOR UPDATE";
+            kingdoms.addAll(jdbcTemplate.query(sql, ROW_MAPPER, chunk.toArray()));
+        }
+        return kingdoms;
+    }
+
+    @Override
+    public List<Kingdom> findAll() {
+        String sql = "SELECT " + COLUMNS + " FROM kingdoms";
+        return jdbcTemplate.query(sql, ROW_MAPPER);
+    }
+
+    @Override
+    public List<Kingdom> findPage(String after, int limit) {
+        if (after == null) {
+            String sql = "SELECT " + COLUMNS + " FROM kingdoms ORDER BY id LIMIT ?";
+            return jdbcTemplate.query(sql, ROW_MAPPER, limit);
+        }
+        String sql = "SELECT " + COLUMNS + " FROM kingdoms WHERE id > ? ORDER BY id LIMIT ?";
+        return jdbcTemplate.query(sql, ROW_MAPPER, uuid(after), limit);
+    }
+
+    /**
+     * Reads the kingdoms through a forward-only cursor
+     * fetched {@code kingdom.stream.fetch-size} rows at a time, so memory does not grow with the table.
+     */
+    @Override
+    public void forEach(Consumer<Kingdom> consumer) {
+        String sql = "SELECT " + COLUMNS + " FROM kingdoms ORDER BY id";
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(ROW_MAPPER.mapRow(rs, 0)));
+    }
+
+    /**
+     * Reads only the id through the index on last_settled, so kingdoms already settled are not read.
+     */
+    @Override
+    public List<String> findIdsSettledBefore(LocalDate day) {
+        String sql = "SELECT id FROM kingdoms WHERE last_settled < ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> rs.getObject(1, UUID.class).toString(), day);
+    }
+
+    @Override
+    public void delete(String id) {
+        String sql = "DELETE FROM kingdoms WHERE id = ?";
+        jdbcTemplate.update(sql, uuid(id));
+        onCommit(() -> markDeleted(id), () -> cache.invalidate(id));
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        String sql = "SELECT COUNT(*) FROM kingdoms WHERE id = ?";
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, uuid(id));
+        return count != null && count > 0;
+    }
+
+    @Override
+    public Optional<Kingdom> investInFood(String id, int gold) {
+        String sql = "SELECT " + COLUMNS + " FROM FINAL TABLE (UPDATE kingdoms SET gold = gold - ?, food = food + 2 * ?, version = version + 1 "
+                + "WHERE id = ? AND gold >= ?)";
+        return updateAndPublish(sql, gold, gold, uuid(id), gold);
+    }
+
+    @Override
+    public Optional<Kingdom> investInCitizens(String id, int gold) {
+        String sql = "SELECT " + COLUMNS + " FROM FINAL TABLE (UPDATE kingdoms SET gold = gold - ?, citizens = citizens + ?, version = version + 1 "
+                + "WHERE id = ? AND gold >= ?)";
+        return updateAndPublish(sql, gold, gold, uuid(id), gold);
+    }
+
+    @Override
+    public Optional<Kingdom> produce(String id, LocalDate day) {
+        String sql = "SELECT " + COLUMNS + " FROM FINAL TABLE (UPDATE kingdoms SET gold = gold + 2 * LEAST(citizens, food), "
+                + "citizens = LEAST(citizens, food), food = food - LEAST(citizens, food), last_settled = ?, "
+                + "version = version + 1 WHERE id = ? AND citizens > 0 AND food > 0)";
+        return updateAndPublish(sql, day, uuid(id));
+    }
+
+    @Override
+    public boolean deleteIfStarving(String id) {
+        String sql = "DELETE FROM kingdoms WHERE id = ? AND (citizens = 0 OR food = 0)";
+        if (jdbcTemplate.update(sql, uuid(id)) == 0) {
+            return false;
+        }
+        onCommit(() -> markDeleted(id), () -> cache.invalidate(id));
+        return true;
+    }
+
+    /**
+     * Served from {@link KingdomLeaderboard}, see {@link #reloadLeaderboard()}.
+     */
+    @Override
+    public Optional<Kingdom> findRichest() {
+        return leaderboard.richest();
+    }
+
+    @Override
+    public List<Kingdom> findTop(int n) {
+        return leaderboard.top(n);
+    }
+
+    /**
+     * Loads every kingdom into the leaderboard, on startup and after writes that touch the whole
+     * table. Rows are merged by version, so writes committed meanwhile are not lost.
+     */
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    public void reloadLeaderboard() {
+        leaderboard.reload(this::forEach);
+    }
+
+    /**
+     * Runs one day of production for every kingdom with three set-based statements instead of
+     * a read and a write per kingdom.
+     */
+    @Override
+    public ProductionReport applyDailyProductionToAll(LocalDate day) {
+        // Kingdoms without citizens, or without any food to feed them, end up with no citizens
+        List<String> deletedIds = jdbcTemplate.queryForList(
+                "SELECT id FROM OLD TABLE (DELETE FROM kingdoms WHERE citizens = 0 OR food = 0)", String.class);
+        int deleted = deletedIds.size();
+
+        // Starving, all the food is eaten: citizens shrink to the food available, if there was less
+        String starvingSql = "SELECT COUNT(*), COALESCE(SUM(2 * citizens), 0) FROM FINAL TABLE ("
+                + "UPDATE kingdoms SET gold = gold + 2 * food, citizens = food, food = 0, last_settled = ?, "
+                + "version = version + 1 WHERE food <= citizens)";
+        long[] starving = jdbcTemplate.queryForObject(starvingSql, (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)}, day);
+
+        String fedSql = "SELECT COUNT(*), COALESCE(SUM(2 * citizens), 0) FROM FINAL TABLE ("
+                + "UPDATE kingdoms SET gold = gold + 2 * citizens, food = food - citizens, last_settled = ?, "
+                + "version = version + 1 WHERE food > citizens)";
+        long[] fed = jdbcTemplate.queryForObject(fedSql, (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)}, day);
+
+        onCommit(() -> {
+            cache.invalidateAll();
+            deletedIds.forEach(leaderboard::remove);
+        }, cache::invalidateAll);
+        return new ProductionReport(deleted + starving[0] + fed[0], starving[0], deleted, starving[1] + fed[1]);
+    }
+
+    private Optional<Kingdom> updateAndPublish(String sql, Object... args) {
+        long epoch = cache.epoch();
+        Optional<Kingdom> kingdom = Optional.ofNullable(jdbcTemplate.query(sql, FIRST_ROW, args));
+        kingdom.ifPresent(k -> publishOnCommit(k, epoch));
+        return kingdom;
+    }
+
+    private void publishOnCommit(Kingdom kingdom, long epoch) {
+        Kingdom committed = new Kingdom(kingdom);
+        onCommit(() -> {
+            cache.publish(committed, epoch);
+            leaderboard.update(committed);
+        }, () -> cache.invalidate(committed.getId()));
+    }
+
+    private void markDeleted(String id) {
+        cache.markDeleted(id);
+        leaderboard.remove(id);
+    }
+
+    /**
+     * Runs {@code action} once the current transaction commits (or right away without one), so the
+     * cache never sees rolled back writes. {@code onUnknown} runs if the outcome is unknown.
+     */
+    private void onCommit(Runnable action, Runnable onUnknown) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    action.run();
+                } else if (status == STATUS_UNKNOWN) {
+                    onUnknown.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * The id column as a UUID, or null if {@code id} is not a UUID: a null parameter matches no row,
+     * so malformed ids are simply not found.
+     */
+    private static UUID uuid(String id) {
+        if (id == null || id.length() != 36) {
+            return null;
+        }
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static class KingdomRowMapper implements RowMapper<Kingdom> {
+        @Override
+        public Kingdom mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return new Kingdom(rs.getObject(1, UUID.class).toString(), rs.getInt(2), rs.getInt(3), rs.getInt(4),
+                    rs.getObject(5, LocalDate.class), rs.getObject(7, LocalDate.class), rs.getLong(6));
+        }
+    }
+}
\ No newline at end of file
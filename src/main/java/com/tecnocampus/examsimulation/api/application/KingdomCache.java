@@ -0,0 +1,178 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of committed kingdom rows, split in segments so readers of different kingdoms
+ * do not contend on one lock.
+ *
+ * Only committed state is ever cached: {@link KingdomRepository} publishes writes after commit and
+ * readers can only fill the cache if no write reached the segment while they were loading. Entries
+ * are versioned so a late publish can never replace a newer row.
+ */
+@Component
+public class KingdomCache {
+    private static final int SEGMENTS = 16;
+    private static final long DELETED = Long.MAX_VALUE;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final AtomicLong epoch = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public KingdomCache(@Value("${kingdom.cache.max-size:10000}") int maxSize) {
+        int segmentSize = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /**
+     * Returns a copy of the cached kingdom, or null if it is not cached.
+     */
+    public Kingdom get(String id) {
+        Segment segment = segmentFor(id);
+        Kingdom kingdom;
+        synchronized (segment) {
+            Entry entry = segment.entries.get(id);
+            kingdom = entry == null ? null : entry.kingdom;
+        }
+        if (kingdom == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new Kingdom(kingdom);
+    }
+
+    /**
+     * Stamp to take before loading a kingdom from the database, see {@link #fill(Kingdom, long)}.
+     */
+    public long stamp(String id) {
+        Segment segment = segmentFor(id);
+        synchronized (segment) {
+            return segment.stamp;
+        }
+    }
+
+    /**
+     * Caches a kingdom read from the database, unless a write reached its segment after
+     * {@code stamp} was taken.
+     */
+    public void fill(Kingdom kingdom, long stamp) {
+        Segment segment = segmentFor(kingdom.getId());
+        synchronized (segment) {
+            if (segment.stamp == stamp && !segment.entries.containsKey(kingdom.getId())) {
+                segment.entries.put(kingdom.getId(), new Entry(new Kingdom(kingdom), kingdom.getVersion()));
+            }
+        }
+    }
+
+    /**
+     * Epoch to take before a write, see {@link #publish(Kingdom, long)}.
+     */
+    public long epoch() {
+        return epoch.get();
+    }
+
+    /**
+     * Caches a committed write, unless the cache was flushed after {@code epoch} was taken or a
+     * newer version is already cached.
+     */
+    public void publish(Kingdom kingdom, long epoch) {
+        Segment segment = segmentFor(kingdom.getId());
+        synchronized (segment) {
+            segment.stamp++;
+            if (this.epoch.get() != epoch) {
+                segment.entries.remove(kingdom.getId());
+                return;
+            }
+            Entry entry = segment.entries.get(kingdom.getId());
+            if (entry == null || entry.version < kingdom.getVersion()) {
+                segment.entries.put(kingdom.getId(), new Entry(new Kingdom(kingdom), kingdom.getVersion()));
+            }
+        }
+    }
+
+    /**
+     * Drops a kingdom, e.g. after a failed write whose outcome is unknown.
+     */
+    public void invalidate(String id) {
+        Segment segment = segmentFor(id);
+        synchronized (segment) {
+            segment.stamp++;
+            segment.entries.remove(id);
+        }
+    }
+
+    /**
+     * Records a committed delete, so a reader still holding the old row cannot cache it again.
+     */
+    public void markDeleted(String id) {
+        Segment segment = segmentFor(id);
+        synchronized (segment) {
+            segment.stamp++;
+            segment.entries.put(id, new Entry(null, DELETED));
+        }
+    }
+
+    /**
+     * Drops every kingdom, for writes that touch the whole table.
+     */
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.stamp++;
+                segment.entries.clear();
+            }
+        }
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(String id) {
+        int hash = id.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private record Entry(Kingdom kingdom, long version) {
+    }
+
+    private final class Segment {
+        private final LinkedHashMap<String, Entry> entries;
+        private long stamp;
+
+        private Segment(int maxSize) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    if (size() > maxSize) {
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
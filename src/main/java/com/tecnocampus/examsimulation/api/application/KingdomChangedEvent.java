@@ -0,0 +1,16 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+
+/**
+ * Published by {@link KingdomService} when a kingdom is created, changed or deleted. Listeners
+ * should use {@code @TransactionalEventListener} so they only see changes that committed.
+ *
+ * @param kingdom the kingdom after the change, or null if it was deleted
+ */
+public record KingdomChangedEvent(String id, Kingdom kingdom) {
+
+    public boolean deleted() {
+        return kingdom == null;
+    }
+}
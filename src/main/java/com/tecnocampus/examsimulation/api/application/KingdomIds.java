@@ -0,0 +1,28 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Ids for new kingdoms. In a cluster only ids owned by this node are handed out, so a kingdom is
+ * always stored by the node that owns it without forwarding the create request; with n nodes that
+ * takes n random ids on average.
+ */
+@Component
+public class KingdomIds {
+    private final KingdomRing ring;
+
+    public KingdomIds(ObjectProvider<KingdomRing> ring) {
+        this.ring = ring.getIfAvailable();
+    }
+
+    public UUID next() {
+        UUID id = UUID.randomUUID();
+        while (ring != null && !ring.isLocal(id.toString())) {
+            id = UUID.randomUUID();
+        }
+        return id;
+    }
+}
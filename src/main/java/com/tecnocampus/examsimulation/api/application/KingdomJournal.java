@@ -0,0 +1,481 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log and snapshots for {@link ColumnarKingdomRepository}, enabled with
+ * {@code kingdom.journal.enabled}.
+ *
+ * Records are appended to an in-memory buffer in the order the store applies them. A single writer
+ * thread drains the buffer to the current segment file and forces it to disk once per drain, so
+ * every writer waiting at that moment shares one fsync (group commit). The log is split in
+ * segments {@code wal-<n>.log}; {@code snapshot-<n>.bin} holds every kingdom as of the start of
+ * segment n, so recovery loads the newest snapshot and replays only the segments after it.
+ */
+@Component
+@ConditionalOnProperty(name = "kingdom.journal.enabled", havingValue = "true")
+public class KingdomJournal {
+    private static final Logger log = LoggerFactory.getLogger(KingdomJournal.class);
+
+    // Written before kingdoms had a last settled day, still replayed
+    private static final byte PUT_UNSETTLED = 1;
+    private static final byte DELETE = 2;
+    // Written before world production logged its day, still replayed
+    private static final byte WORLD_PRODUCTION_UNDATED = 3;
+    private static final byte PUT = 4;
+    private static final byte WORLD_PRODUCTION = 5;
+
+    private static final int PUT_UNSETTLED_SIZE = 8 + 8 + 4 + 4 + 4 + 4 + 8;
+    private static final int PUT_SIZE = PUT_UNSETTLED_SIZE + 4;
+    private static final int DELETE_SIZE = 8 + 8;
+    private static final int WORLD_PRODUCTION_SIZE = 4;
+    private static final int SNAPSHOT_UNSETTLED_MAGIC = 0x4B444D53;
+    private static final int SNAPSHOT_MAGIC = 0x4B444D32;
+
+    /**
+     * Receives the kingdoms of the snapshot and the records of the log during recovery.
+     */
+    public interface Replay {
+        void put(long idHigh, long idLow, int gold, int citizens, int food, int dateOfCreation, long version,
+                 int lastSettled);
+
+        void delete(long idHigh, long idLow);
+
+        /**
+         * One day of production for every kingdom, which leaves them settled on {@code day}.
+         */
+        void worldProduction(int day);
+    }
+
+    /**
+     * Gives the kingdoms to write to a snapshot.
+     */
+    public interface SnapshotSource {
+        int size();
+
+        void write(int slot, ByteBuffer buffer);
+    }
+
+    private final Path directory;
+    private final Duration snapshotInterval;
+
+    private final ReentrantLock bufferLock = new ReentrantLock();
+    private final Condition appended = bufferLock.newCondition();
+    private final Condition forced = bufferLock.newCondition();
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+    private long appendedSequence;
+    private long durableSequence;
+    private IOException failure;
+    private boolean closed;
+
+    private final ReentrantLock ioLock = new ReentrantLock();
+    private FileChannel channel;
+    private long segment;
+
+    private final CRC32 crc = new CRC32();
+    private Thread writer;
+    private ScheduledExecutorService snapshotter;
+    private volatile long lastSnapshotSequence;
+
+    public KingdomJournal(@Value("${kingdom.journal.directory:data/journal}") Path directory,
+                          @Value("${kingdom.journal.snapshot-interval:5m}") Duration snapshotInterval) {
+        this.directory = directory;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Loads the newest snapshot and replays the log written after it, then starts a new segment
+     * for appends. Replay stops at the first torn or corrupt record, which can only be the tail of
+     * a segment that was being written when the process died.
+     */
+    public void recover(Replay replay) {
+        try {
+            Files.createDirectories(directory);
+            List<Long> snapshots = segments("snapshot-", ".bin");
+            long from = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+            if (!snapshots.isEmpty()) {
+                readSnapshot(file("snapshot-", from, ".bin"), replay);
+            }
+            long last = from;
+            for (long wal : segments("wal-", ".log")) {
+                if (wal >= from) {
+                    readSegment(file("wal-", wal, ".log"), replay);
+                }
+                last = Math.max(last, wal);
+            }
+            openSegment(last + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Starts the writer thread, and runs {@code snapshotTask} every snapshot interval in which
+     * something was logged. The task is expected to call {@link #snapshot(SnapshotSource)}.
+     */
+    public void start(Runnable snapshotTask) {
+        writer = Thread.ofPlatform().name("kingdom-journal-writer").daemon().start(this::writeLoop);
+        snapshotter = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("kingdom-journal-snapshot").daemon().factory());
+        long interval = snapshotInterval.toMillis();
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                if (appendedSequence() != lastSnapshotSequence) {
+                    snapshotTask.run();
+                }
+            } catch (RuntimeException e) {
+                log.error("Kingdom snapshot failed", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public long logPut(long idHigh, long idLow, int gold, int citizens, int food, int dateOfCreation, long version,
+                       int lastSettled) {
+        return append(PUT, PUT_SIZE, buffer -> buffer.putLong(idHigh).putLong(idLow).putInt(gold).putInt(citizens)
+                .putInt(food).putInt(dateOfCreation).putLong(version).putInt(lastSettled));
+    }
+
+    public long logDelete(long idHigh, long idLow) {
+        return append(DELETE, DELETE_SIZE, buffer -> buffer.putLong(idHigh).putLong(idLow));
+    }
+
+    /**
+     * Logs a world production with the day it ran, so replaying it later settles the kingdoms on
+     * that day rather than on the day of the recovery.
+     */
+    public long logWorldProduction(int day) {
+        return append(WORLD_PRODUCTION, WORLD_PRODUCTION_SIZE, buffer -> buffer.putInt(day));
+    }
+
+    /**
+     * Blocks until every record up to {@code sequence} is on disk.
+     */
+    public void awaitDurable(long sequence) {
+        bufferLock.lock();
+        try {
+            while (durableSequence < sequence && failure == null) {
+                forced.awaitUninterruptibly();
+            }
+            if (failure != null && durableSequence < sequence) {
+                throw new DataAccessResourceFailureException("Kingdom journal write failed", failure);
+            }
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot. Must be called while the store's write lock is held: the log is switched to
+     * a new segment and the kingdoms are copied under it, then written to disk without the lock.
+     * Returns the task that writes the copy; run it after releasing the store's lock.
+     */
+    public Runnable snapshot(SnapshotSource source) {
+        long sequence = appendedSequence();
+        awaitDurable(sequence);
+        long snapshotSegment;
+        ioLock.lock();
+        try {
+            snapshotSegment = segment + 1;
+            openSegment(snapshotSegment);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            ioLock.unlock();
+        }
+
+        int size = source.size();
+        ByteBuffer rows = ByteBuffer.allocate(size * PUT_SIZE);
+        for (int slot = 0; slot < size; slot++) {
+            source.write(slot, rows);
+        }
+        rows.flip();
+        return () -> {
+            try {
+                writeSnapshot(snapshotSegment, rows);
+                lastSnapshotSequence = sequence;
+                deleteBefore(snapshotSegment);
+            } catch (IOException e) {
+                log.error("Could not write kingdom snapshot {}", snapshotSegment, e);
+            }
+        };
+    }
+
+    @PreDestroy
+    public void close() {
+        // Let a running snapshot finish; interrupting it would close the channel it is writing to
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+            try {
+                snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        bufferLock.lock();
+        try {
+            closed = true;
+            appended.signalAll();
+        } finally {
+            bufferLock.unlock();
+        }
+        try {
+            if (writer != null) {
+                writer.join();
+            }
+            ioLock.lock();
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } finally {
+                ioLock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("Could not close kingdom journal", e);
+        }
+    }
+
+    private interface RecordWriter {
+        void write(ByteBuffer buffer);
+    }
+
+    private long append(byte type, int payloadSize, RecordWriter payload) {
+        bufferLock.lock();
+        try {
+            if (closed) {
+                throw new DataAccessResourceFailureException("Kingdom journal is closed");
+            }
+            int recordSize = 4 + 1 + payloadSize + 4;
+            if (pending.remaining() < recordSize) {
+                pending = grow(pending, recordSize);
+            }
+            int start = pending.position();
+            pending.putInt(payloadSize);
+            pending.put(type);
+            payload.write(pending);
+            crc.reset();
+            crc.update(pending.array(), start + 4, 1 + payloadSize);
+            pending.putInt((int) crc.getValue());
+            appended.signal();
+            return ++appendedSequence;
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    private long appendedSequence() {
+        bufferLock.lock();
+        try {
+            return appendedSequence;
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            long target;
+            bufferLock.lock();
+            try {
+                while (pending.position() == 0 && !closed) {
+                    appended.awaitUninterruptibly();
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+                ByteBuffer drained = pending;
+                pending = writing;
+                writing = drained;
+                target = appendedSequence;
+            } finally {
+                bufferLock.unlock();
+            }
+
+            IOException error = null;
+            ioLock.lock();
+            try {
+                writing.flip();
+                while (writing.hasRemaining()) {
+                    channel.write(writing);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                writing.clear();
+                ioLock.unlock();
+            }
+
+            bufferLock.lock();
+            try {
+                if (error != null) {
+                    log.error("Kingdom journal write failed", error);
+                    failure = error;
+                } else {
+                    durableSequence = target;
+                }
+                forced.signalAll();
+            } finally {
+                bufferLock.unlock();
+            }
+        }
+    }
+
+    private void openSegment(long next) throws IOException {
+        if (channel != null) {
+            channel.force(true);
+            channel.close();
+        }
+        segment = next;
+        channel = FileChannel.open(file("wal-", next, ".log"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void readSegment(Path path, Replay replay) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        CRC32 checksum = new CRC32();
+        while (buffer.remaining() >= 4 + 1 + 4) {
+            int start = buffer.position();
+            int payloadSize = buffer.getInt();
+            if (payloadSize < 0 || buffer.remaining() < 1 + payloadSize + 4) {
+                break;
+            }
+            checksum.reset();
+            checksum.update(buffer.array(), start + 4, 1 + payloadSize);
+            byte type = buffer.get();
+            int payloadStart = buffer.position();
+            buffer.position(payloadStart + payloadSize);
+            if (buffer.getInt() != (int) checksum.getValue()) {
+                break;
+            }
+            buffer.position(payloadStart);
+            switch (type) {
+                case PUT -> replay.put(buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.getInt(),
+                        buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getInt());
+                case PUT_UNSETTLED -> replay.put(buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.getInt(),
+                        buffer.getInt(), buffer.getInt(), buffer.getLong(), today());
+                case DELETE -> replay.delete(buffer.getLong(), buffer.getLong());
+                case WORLD_PRODUCTION -> replay.worldProduction(buffer.getInt());
+                case WORLD_PRODUCTION_UNDATED -> replay.worldProduction(today());
+                default -> throw new IOException("Unknown record type " + type + " in " + path);
+            }
+            buffer.position(payloadStart + payloadSize + 4);
+        }
+        if (buffer.hasRemaining()) {
+            log.warn("Ignoring {} bytes of torn records at the end of {}", buffer.remaining(), path);
+        }
+    }
+
+    private void writeSnapshot(long snapshotSegment, ByteBuffer rows) throws IOException {
+        Path target = file("snapshot-", snapshotSegment, ".bin");
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        CRC32 checksum = new CRC32();
+        checksum.update(rows.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(4 + 4).putInt(SNAPSHOT_MAGIC).putInt(rows.remaining() / PUT_SIZE).flip();
+        ByteBuffer trailer = ByteBuffer.allocate(4).putInt((int) checksum.getValue()).flip();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] parts = {header, rows, trailer};
+            while (trailer.hasRemaining()) {
+                out.write(parts);
+            }
+            out.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void readSnapshot(Path path, Replay replay) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        int magic = buffer.getInt();
+        if (magic != SNAPSHOT_MAGIC && magic != SNAPSHOT_UNSETTLED_MAGIC) {
+            throw new IOException("Not a kingdom snapshot: " + path);
+        }
+        boolean settled = magic == SNAPSHOT_MAGIC;
+        int rowSize = settled ? PUT_SIZE : PUT_UNSETTLED_SIZE;
+        int count = buffer.getInt();
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), buffer.position(), count * rowSize);
+        if (buffer.getInt(buffer.position() + count * rowSize) != (int) checksum.getValue()) {
+            throw new IOException("Corrupt kingdom snapshot: " + path);
+        }
+        int today = today();
+        for (int i = 0; i < count; i++) {
+            replay.put(buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.getInt(),
+                    buffer.getInt(), buffer.getInt(), buffer.getLong(), settled ? buffer.getInt() : today);
+        }
+    }
+
+    /**
+     * Last settled day of kingdoms recovered from records written before it was logged: like rows
+     * of a table upgraded by schema.sql, they start settling from the day of the upgrade. The same
+     * goes for world productions logged without their day.
+     */
+    private static int today() {
+        return (int) LocalDate.now().toEpochDay();
+    }
+
+    private void deleteBefore(long snapshotSegment) throws IOException {
+        for (long wal : segments("wal-", ".log")) {
+            if (wal < snapshotSegment) {
+                Files.deleteIfExists(file("wal-", wal, ".log"));
+            }
+        }
+        for (long snapshot : segments("snapshot-", ".bin")) {
+            if (snapshot < snapshotSegment) {
+                Files.deleteIfExists(file("snapshot-", snapshot, ".bin"));
+            }
+        }
+    }
+
+    private List<Long> segments(String prefix, String suffix) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    private Path file(String prefix, long number, String suffix) {
+        return directory.resolve(prefix + number + suffix);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+}
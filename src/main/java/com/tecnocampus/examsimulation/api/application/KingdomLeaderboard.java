@@ -0,0 +1,143 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Kingdoms ranked by gold, kept up to date by {@link KingdomRepository} as writes commit, so the
+ * richest kingdoms can be read in O(log n) instead of sorting the table.
+ *
+ * Each kingdom has a single rank, replaced atomically per id and only by a newer version, so
+ * publishes that arrive out of order cannot bring back an older gold value. A deleted kingdom leaves
+ * a tombstone for the same reason, kept for {@code kingdom.leaderboard.tombstone-grace} and while a
+ * {@link #reload(Consumer) reload} that may have read it is running, then dropped so deleted ids do
+ * not pile up. The grace must be far longer than a commit takes to publish, the only time an older
+ * update can still arrive.
+ */
+@Component
+public class KingdomLeaderboard {
+    private static final long DELETED = Long.MAX_VALUE;
+
+    private final ConcurrentSkipListSet<Rank> ranking = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<String, Rank> ranks = new ConcurrentHashMap<>();
+    // In the order they were deleted, so the expired ones are at the head
+    private final ConcurrentLinkedQueue<Tombstone> tombstones = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger reloads = new AtomicInteger();
+    private final long tombstoneGraceNanos;
+
+    public KingdomLeaderboard(@Value("${kingdom.leaderboard.tombstone-grace:1m}") Duration tombstoneGrace) {
+        this.tombstoneGraceNanos = tombstoneGrace.toNanos();
+    }
+
+    public void update(Kingdom kingdom) {
+        Kingdom snapshot = new Kingdom(kingdom);
+        ranks.compute(snapshot.getId(), (id, current) -> {
+            if (current != null && current.version >= snapshot.getVersion()) {
+                return current;
+            }
+            // Add before removing, so readers never see the kingdom missing from the ranking
+            Rank rank = new Rank(snapshot.getGold(), id, snapshot.getVersion(), snapshot);
+            ranking.add(rank);
+            if (current != null) {
+                ranking.remove(current);
+            }
+            return rank;
+        });
+    }
+
+    public void remove(String id) {
+        Rank tombstone = new Rank(0, id, DELETED, null);
+        ranks.compute(id, (key, current) -> {
+            if (current != null) {
+                ranking.remove(current);
+            }
+            return tombstone;
+        });
+        tombstones.add(new Tombstone(tombstone, System.nanoTime()));
+        expireTombstones();
+    }
+
+    /**
+     * Merges every kingdom handed out by {@code source} by version, like {@link #update(Kingdom)}.
+     * Tombstones are kept until it returns, since the source may have read a kingdom before it was
+     * deleted.
+     */
+    public void reload(Consumer<Consumer<Kingdom>> source) {
+        reloads.incrementAndGet();
+        try {
+            source.accept(this::update);
+        } finally {
+            reloads.decrementAndGet();
+        }
+        expireTombstones();
+    }
+
+    private void expireTombstones() {
+        if (reloads.get() > 0) {
+            return;
+        }
+        long expiredBefore = System.nanoTime() - tombstoneGraceNanos;
+        for (Tombstone head = tombstones.peek(); head != null && head.deletedAt - expiredBefore <= 0;
+                head = tombstones.peek()) {
+            if (tombstones.remove(head)) {
+                // Only this tombstone: the id may have been deleted again since, with a newer one
+                Rank expired = head.rank;
+                ranks.computeIfPresent(expired.id, (id, current) -> current == expired ? null : current);
+            }
+        }
+    }
+
+    public Optional<Kingdom> richest() {
+        for (Rank rank : ranking) {
+            return Optional.of(new Kingdom(rank.kingdom));
+        }
+        return Optional.empty();
+    }
+
+    public List<Kingdom> top(int n) {
+        List<Kingdom> top = new ArrayList<>(Math.min(n, 64));
+        Set<String> seen = new HashSet<>();
+        for (Rank rank : ranking) {
+            if (top.size() == n) {
+                break;
+            }
+            // A kingdom can briefly appear twice while its rank is being replaced
+            if (seen.add(rank.id)) {
+                top.add(new Kingdom(rank.kingdom));
+            }
+        }
+        return top;
+    }
+
+    public int size() {
+        return ranking.size();
+    }
+
+    private record Tombstone(Rank rank, long deletedAt) {
+    }
+
+    private record Rank(int gold, String id, long version, Kingdom kingdom) implements Comparable<Rank> {
+        @Override
+        public int compareTo(Rank other) {
+            int byGold = Integer.compare(other.gold, gold);
+            if (byGold != 0) {
+                return byGold;
+            }
+            int byId = id.compareTo(other.id);
+            return byId != 0 ? byId : Long.compare(version, other.version);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes work on the same kingdom inside this instance, with a fixed array of
+ * {@code kingdom.locks.stripes} locks indexed by id hash, so requests on different kingdoms
+ * almost never wait for each other and memory does not grow with the number of kingdoms.
+ *
+ * Several stripes are always taken in ascending index order, so two callers locking the same
+ * kingdoms in opposite order cannot deadlock. {@link ReentrantLock} rather than {@code synchronized}
+ * so waiting virtual threads release their carrier.
+ *
+ * Stripes are taken outside transactions and released after commit: the database row locks still
+ * guarantee correctness, the stripes only keep requests from queueing on them.
+ */
+@Component
+public class KingdomLocks {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    private final Counter uncontended;
+    private final Counter contended;
+    private final Timer waits;
+
+    public KingdomLocks(@Value("${kingdom.locks.stripes:1024}") int stripes, MeterRegistry meterRegistry) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("kingdom.locks.stripes must be positive");
+        }
+        // Rounded up to a power of two, so the stripe is a mask of the hash
+        int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+        this.uncontended = acquisitionCounter(meterRegistry, "uncontended");
+        this.contended = acquisitionCounter(meterRegistry, "contended");
+        this.waits = Timer.builder("kingdom.locks.wait")
+                .description("Time spent waiting for a kingdom lock held by another request")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Counter acquisitionCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("kingdom.locks.acquisitions")
+                .description("Kingdom lock acquisitions (contended: had to wait for another request)")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs {@code action} holding the stripe of {@code id}.
+     */
+    public <T> T withLock(String id, Supplier<T> action) {
+        ReentrantLock lock = stripes[stripe(id)];
+        acquire(lock);
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs {@code action} holding the stripe of {@code id} if it is free, without waiting. For
+     * callers that may already hold other locks in an order this instance does not control, such
+     * as the other node of a two-party attack.
+     *
+     * @throws CannotAcquireLockException if another request holds the stripe
+     */
+    public <T> T tryWithLock(String id, Supplier<T> action) {
+        ReentrantLock lock = stripes[stripe(id)];
+        if (!lock.tryLock()) {
+            throw new CannotAcquireLockException("Kingdom " + id + " is busy");
+        }
+        uncontended.increment();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs {@code action} holding the stripes of both kingdoms, taken in stripe order.
+     */
+    public <T> T withLocks(String first, String second, Supplier<T> action) {
+        int a = stripe(first);
+        int b = stripe(second);
+        if (a == b) {
+            return withLock(first, action);
+        }
+        ReentrantLock low = stripes[Math.min(a, b)];
+        ReentrantLock high = stripes[Math.max(a, b)];
+        acquire(low);
+        try {
+            acquire(high);
+            try {
+                return action.get();
+            } finally {
+                high.unlock();
+            }
+        } finally {
+            low.unlock();
+        }
+    }
+
+    /**
+     * Runs {@code action} holding the stripes of all {@code ids}, taken in stripe order.
+     */
+    public <T> T withLocks(Collection<String> ids, Supplier<T> action) {
+        int[] indexes = ids.stream().mapToInt(this::stripe).distinct().sorted().toArray();
+        int locked = 0;
+        try {
+            for (int index : indexes) {
+                acquire(stripes[index]);
+                locked++;
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                stripes[indexes[i]].unlock();
+            }
+        }
+    }
+
+    public int stripes() {
+        return stripes.length;
+    }
+
+    private int stripe(String id) {
+        int h = id.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void acquire(ReentrantLock lock) {
+        if (lock.tryLock()) {
+            uncontended.increment();
+            return;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        waits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        contended.increment();
+    }
+}
@@ -0,0 +1,44 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enables {@code @Timed} on the controller, service and repository through
+ * {@link TimedMethodInterceptor}, and publishes the cache and leaderboard statistics.
+ */
+@Configuration
+public class KingdomMetricsConfiguration {
+
+    @Bean
+    public Advisor timedAdvisor(MeterRegistry meterRegistry) {
+        return new DefaultPointcutAdvisor(new AnnotationMatchingPointcut(Timed.class, true),
+                new TimedMethodInterceptor(meterRegistry));
+    }
+
+    @Bean
+    public MeterBinder kingdomCacheMetrics(KingdomCache cache, KingdomLeaderboard leaderboard) {
+        return registry -> {
+            FunctionCounter.builder("kingdom.cache.requests", cache, KingdomCache::getHits)
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("kingdom.cache.requests", cache, KingdomCache::getMisses)
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("kingdom.cache.evictions", cache, KingdomCache::getEvictions)
+                    .register(registry);
+            Gauge.builder("kingdom.cache.size", cache, KingdomCache::size)
+                    .register(registry);
+            Gauge.builder("kingdom.leaderboard.size", leaderboard, KingdomLeaderboard::size)
+                    .register(registry);
+        };
+    }
+}
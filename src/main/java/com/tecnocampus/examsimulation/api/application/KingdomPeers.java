@@ -0,0 +1,227 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import com.tecnocampus.examsimulation.api.domain.ProductionReport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Calls to other nodes of the cluster: to the node that owns a kingdom, for the service operations
+ * that involve kingdoms of other nodes, and to every other node, for the ones about all kingdoms.
+ * Every call carries the cluster token, so the node serves it on its own kingdoms without
+ * forwarding or fanning it out again.
+ */
+@Component
+@ConditionalOnProperty(name = "kingdom.cluster.enabled", havingValue = "true")
+public class KingdomPeers {
+    private static final TypeReference<List<Kingdom>> KINGDOMS = new TypeReference<>() { };
+
+    private final KingdomRing ring;
+    private final ObjectMapper objectMapper;
+    private final Duration timeout;
+    private final HttpClient client;
+
+    public KingdomPeers(KingdomRing ring, ObjectMapper objectMapper,
+                        @Value("${kingdom.cluster.timeout:5s}") Duration timeout) {
+        this.ring = ring;
+        this.objectMapper = objectMapper;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder().connectTimeout(timeout).build();
+    }
+
+    public Optional<Kingdom> find(String id) {
+        HttpResponse<byte[]> response = send(request(id, "").GET());
+        if (response.statusCode() == 404) {
+            return Optional.empty();
+        }
+        return Optional.of(read(response, Kingdom.class));
+    }
+
+    /**
+     * The richest kingdom of each other node that has any.
+     */
+    public List<Kingdom> findRichest() {
+        return sendToOthers(node -> nodeRequest(node, "/kingdoms/richest").GET()).stream()
+                .filter(response -> response.statusCode() != 404)
+                .map(response -> read(response, Kingdom.class))
+                .toList();
+    }
+
+    /**
+     * The {@code n} richest kingdoms of every other node, richest first within each node.
+     */
+    public List<Kingdom> findTop(int n) {
+        return sendToOthers(node -> nodeRequest(node, "/kingdoms/top?n=" + n).GET()).stream()
+                .flatMap(response -> read(response, KINGDOMS).stream())
+                .toList();
+    }
+
+    /**
+     * A page of kingdoms of every other node, each in id order.
+     */
+    public List<Kingdom> findPage(String after, int limit) {
+        String query = "?limit=" + limit + (after != null ? "&after=" + URLEncoder.encode(after, StandardCharsets.UTF_8) : "");
+        return sendToOthers(node -> nodeRequest(node, "/kingdoms" + query).GET()).stream()
+                .flatMap(response -> read(response, KINGDOMS).stream())
+                .toList();
+    }
+
+    /**
+     * Runs world production on every other node, each in its own transaction.
+     */
+    public List<ProductionReport> startWorldProduction() {
+        return sendToOthers(node -> nodeRequest(node, "/kingdoms/production")
+                .POST(HttpRequest.BodyPublishers.noBody())).stream()
+                .map(response -> read(response, ProductionReport.class))
+                .toList();
+    }
+
+    /**
+     * Hands every kingdom of the other nodes to {@code consumer}, one node after another, as their
+     * exports are streamed.
+     */
+    public void forEach(Consumer<Kingdom> consumer) {
+        for (String node : others()) {
+            HttpResponse<Stream<String>> response = send(nodeRequest(node, "/kingdoms/export")
+                    .setHeader("Accept", "application/x-ndjson")
+                    .GET(), HttpResponse.BodyHandlers.ofLines());
+            try (Stream<String> lines = response.body()) {
+                checkOk(response);
+                lines.filter(line -> !line.isBlank()).forEach(line -> consumer.accept(parse(line)));
+            } catch (UncheckedIOException e) {
+                throw new DataAccessResourceFailureException("Cluster node " + node + " export was cut short", e);
+            }
+        }
+    }
+
+    /**
+     * Sets the gold and citizens of the kingdom on its owner, if it is still at {@code expectedVersion}.
+     *
+     * @return the kingdom as committed by its owner
+     * @throws OptimisticLockingFailureException if the kingdom changed since that version
+     * @throws CannotAcquireLockException if a request on its owner holds the kingdom
+     * @throws NoSuchElementException if the kingdom no longer exists
+     */
+    public Kingdom applyBattle(String id, int gold, int citizens, long expectedVersion) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(new Kingdom.BattleResult(gold, citizens, expectedVersion));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        HttpResponse<byte[]> response = send(request(id, "/battle")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body)));
+        return switch (response.statusCode()) {
+            case 423 -> throw new CannotAcquireLockException("Kingdom " + id + " is busy");
+            case 409 -> throw new OptimisticLockingFailureException("Kingdom " + id + " was modified concurrently");
+            case 404 -> throw new NoSuchElementException("Target kingdom not found");
+            default -> read(response, Kingdom.class);
+        };
+    }
+
+    private HttpRequest.Builder request(String id, String path) {
+        return HttpRequest.newBuilder(URI.create(ring.owner(id) + "/kingdoms/" + id + path))
+                .header(KingdomRing.TOKEN_HEADER, ring.token())
+                .header("Accept", "application/json")
+                .timeout(timeout);
+    }
+
+    private HttpRequest.Builder nodeRequest(String node, String path) {
+        return HttpRequest.newBuilder(URI.create(node + path))
+                .header(KingdomRing.TOKEN_HEADER, ring.token())
+                .header("Accept", "application/json")
+                .timeout(timeout);
+    }
+
+    private List<String> others() {
+        return ring.nodes().stream().filter(node -> !node.equals(ring.self())).toList();
+    }
+
+    /**
+     * Sends a request to every other node at once and waits for all the replies, in node order.
+     */
+    private List<HttpResponse<byte[]>> sendToOthers(Function<String, HttpRequest.Builder> request) {
+        List<CompletableFuture<HttpResponse<byte[]>>> replies = others().stream()
+                .map(node -> client.sendAsync(request.apply(node).build(), HttpResponse.BodyHandlers.ofByteArray()))
+                .toList();
+        try {
+            return replies.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            throw new DataAccessResourceFailureException("Cluster node unreachable", e.getCause());
+        }
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest.Builder request) {
+        return send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest.Builder request, HttpResponse.BodyHandler<T> body) {
+        try {
+            return client.send(request.build(), body);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Cluster node unreachable", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessResourceFailureException("Interrupted calling a cluster node", e);
+        }
+    }
+
+    private <T> T read(HttpResponse<byte[]> response, Class<T> type) {
+        checkOk(response);
+        try {
+            return objectMapper.readValue(response.body(), type);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unreadable reply from a cluster node", e);
+        }
+    }
+
+    private <T> T read(HttpResponse<byte[]> response, TypeReference<T> type) {
+        checkOk(response);
+        try {
+            return objectMapper.readValue(response.body(), type);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unreadable reply from a cluster node", e);
+        }
+    }
+
+    private Kingdom parse(String line) {
+        try {
+            return objectMapper.readValue(line, Kingdom.class);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unreadable reply from a cluster node", e);
+        }
+    }
+
+    private static void checkOk(HttpResponse<?> response) {
+        if (response.statusCode() != 200) {
+            throw new DataAccessResourceFailureException(
+                    "Cluster node " + response.uri().getAuthority() + " answered " + response.statusCode());
+        }
+    }
+}
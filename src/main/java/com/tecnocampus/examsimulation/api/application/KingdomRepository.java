@@ -1,66 +1,118 @@
 package com.tecnocampus.examsimulation.api.application;
 
 import com.tecnocampus.examsimulation.api.domain.Kingdom;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
-import org.springframework.stereotype.Repository;
+import com.tecnocampus.examsimulation.api.domain.ProductionReport;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
-@Repository
-public class KingdomRepository {
-    private final JdbcTemplate jdbcTemplate;
-
-    public KingdomRepository(JdbcTemplate jdbcTemplate) {
-        this.jdbcTemplate = jdbcTemplate;
-    }
-
-    public Kingdom save(Kingdom kingdom) {
-        if (kingdom.getId() == null) {
-            String sql = "INSERT INTO kingdoms (id, gold, citizens, food, date_of_creation) VALUES (?, ?, ?, ?, ?)";
-            String id = java.util.UUID.randomUUID().toString();
-            jdbcTemplate.update(sql, id, kingdom.getGold(), kingdom.getCitizens(), kingdom.getFood(), kingdom.getDateOfCreation());
-            kingdom.setId(id);
-        } else {
-            String sql = "UPDATE kingdoms SET gold = ?, citizens = ?, food = ? WHERE id = ?";
-            jdbcTemplate.update(sql, kingdom.getGold(), kingdom.getCitizens(), kingdom.getFood(), kingdom.getId());
-        }
-        return kingdom;
-    }
-
-    public Optional<Kingdom> findById(String id) {
-        String sql = "SELECT * FROM kingdoms WHERE id = ?";
-        return jdbcTemplate.query(sql, new KingdomRowMapper(), id).stream().findFirst();
-    }
-
-    public List<Kingdom> findAll() {
-        String sql = "SELECT * FROM kingdoms";
-        return jdbcTemplate.query(sql, new KingdomRowMapper());
-    }
-
-    public void delete(String id) {
-        String sql = "DELETE FROM kingdoms WHERE id = ?";
-        jdbcTemplate.update(sql, id);
-    }
-
-    public Optional<Kingdom> findRichest() {
-        String sql = "SELECT * FROM kingdoms ORDER BY gold DESC LIMIT 1";
-        return jdbcTemplate.query(sql, new KingdomRowMapper()).stream().findFirst();
-    }
-
-    private static class KingdomRowMapper implements RowMapper<Kingdom> {
-        @Override
-        public Kingdom mapRow(ResultSet rs, int rowNum) throws SQLException {
-            Kingdom kingdom = new Kingdom();
-            kingdom.setId(rs.getString("id"));
-            kingdom.setGold(rs.getInt("gold"));
-            kingdom.setCitizens(rs.getInt("citizens"));
-            kingdom.setFood(rs.getInt("food"));
-            kingdom.setDateOfCreation(rs.getDate("date_of_creation").toLocalDate());
-            return kingdom;
-        }
-    }
-}
\ No newline at end of file
+/**
+ * Storage of kingdoms. The implementation is selected with {@code kingdom.storage}: {@code jdbc}
+ * (default) or {@code columnar}.
+ */
+public interface KingdomRepository {
+
+    /**
+     * Inserts a new kingdom or updates an existing one. Updates are optimistic: they only apply
+     * if the kingdom still has the version it was read with.
+     *
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the kingdom was modified
+     *         or deleted since it was read
+     */
+    Kingdom save(Kingdom kingdom);
+
+    /**
+     * Inserts new kingdoms in one batch and assigns their ids.
+     */
+    List<Kingdom> insertAll(List<Kingdom> kingdoms);
+
+    /**
+     * Updates existing kingdoms in one batch, each with the same optimistic check as
+     * {@link #save(Kingdom)}. Must be called inside a transaction, which the caller rolls back if
+     * any kingdom is stale.
+     *
+     * @throws org.springframework.dao.OptimisticLockingFailureException if any kingdom was modified
+     *         or deleted since it was read
+     */
+    void updateAll(List<Kingdom> kingdoms);
+
+    Optional<Kingdom> findById(String id);
+
+    /**
+     * Reads a kingdom and locks it until the end of the current transaction.
+     */
+    Optional<Kingdom> findByIdForUpdate(String id);
+
+    /**
+     * Reads the kingdoms that exist among {@code ids} and locks them until the end of the current
+     * transaction. Rows are locked in id order, like single kingdoms locked by an attack.
+     */
+    List<Kingdom> findAllByIdForUpdate(Collection<String> ids);
+
+    List<Kingdom> findAll();
+
+    /**
+     * Keyset page of kingdoms ordered by id: the first {@code limit} kingdoms whose id is greater
+     * than {@code after}, or from the start if {@code after} is null.
+     */
+    List<Kingdom> findPage(String after, int limit);
+
+    /**
+     * Hands every kingdom to {@code consumer} without loading them all in memory at once.
+     */
+    void forEach(Consumer<Kingdom> consumer);
+
+    /**
+     * Ids of the kingdoms whose production was last settled before {@code day}, the ones lazy
+     * production still has to run.
+     */
+    List<String> findIdsSettledBefore(LocalDate day);
+
+    void delete(String id);
+
+    boolean existsById(String id);
+
+    /**
+     * Spends {@code gold} on food (two food per gold) atomically. Empty when the kingdom does not
+     * exist or does not have enough gold.
+     */
+    Optional<Kingdom> investInFood(String id, int gold);
+
+    /**
+     * Spends {@code gold} on citizens (one citizen per gold) atomically. Empty when the kingdom
+     * does not exist or does not have enough gold.
+     */
+    Optional<Kingdom> investInCitizens(String id, int gold);
+
+    /**
+     * Runs one day of production for a kingdom atomically: citizens are capped by the food
+     * available, eat it, and produce two gold each, and the kingdom is marked settled on {@code day}.
+     * Empty when the kingdom does not exist or would be left without citizens (see
+     * {@link #deleteIfStarving(String)}).
+     */
+    Optional<Kingdom> produce(String id, LocalDate day);
+
+    /**
+     * Deletes the kingdom if it has no citizens or no food left.
+     */
+    boolean deleteIfStarving(String id);
+
+    Optional<Kingdom> findRichest();
+
+    List<Kingdom> findTop(int n);
+
+    /**
+     * Rebuilds whatever serves {@link #findRichest()} and {@link #findTop(int)} after writes that
+     * touch every kingdom.
+     */
+    void reloadLeaderboard();
+
+    /**
+     * Runs one day of production for every kingdom, marking them settled on {@code day}. Must be
+     * called inside a transaction, and followed by {@link #reloadLeaderboard()} once it commits.
+     */
+    ProductionReport applyDailyProductionToAll(LocalDate day);
+}
@@ -0,0 +1,106 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Which node of the cluster owns each kingdom, enabled with {@code kingdom.cluster.enabled}.
+ *
+ * Consistent hashing: every node in {@code kingdom.cluster.nodes} is placed on a 64-bit ring at
+ * {@code kingdom.cluster.virtual-nodes} points, and a kingdom belongs to the first point at or after
+ * the hash of its id. Adding or removing a node only moves the kingdoms of its own arcs, and the
+ * virtual nodes spread them evenly over the others. Every node must be given the same node list.
+ */
+@Component
+@ConditionalOnProperty(name = "kingdom.cluster.enabled", havingValue = "true")
+public class KingdomRing {
+    /**
+     * Sent with the cluster token on requests between nodes; such requests are served where they
+     * arrive and never forwarded again.
+     */
+    public static final String TOKEN_HEADER = "X-Kingdom-Cluster-Token";
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final List<String> nodes;
+    private final String self;
+    private final String token;
+
+    public KingdomRing(@Value("${kingdom.cluster.nodes}") List<String> nodes,
+                       @Value("${kingdom.cluster.self}") String self,
+                       @Value("${kingdom.cluster.virtual-nodes:128}") int virtualNodes,
+                       @Value("${kingdom.cluster.token:}") String token) {
+        if (!nodes.contains(self)) {
+            throw new IllegalArgumentException("kingdom.cluster.self " + self + " is not in kingdom.cluster.nodes");
+        }
+        if (token == null || token.isBlank()) {
+            throw new IllegalArgumentException("kingdom.cluster.token must be set when kingdom.cluster.enabled is true");
+        }
+        this.nodes = List.copyOf(nodes);
+        this.self = self;
+        this.token = token;
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * Base URL of the node that owns {@code id}.
+     */
+    public String owner(String id) {
+        Map.Entry<Long, String> point = ring.ceilingEntry(hash(id));
+        return (point != null ? point : ring.firstEntry()).getValue();
+    }
+
+    public boolean isLocal(String id) {
+        return owner(id).equals(self);
+    }
+
+    public String self() {
+        return self;
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    /**
+     * Tells whether a request comes from another node of the cluster. The token is compared in
+     * constant time so that the time taken does not tell how much of a guess was right.
+     */
+    public boolean isPeer(String headerValue) {
+        return headerValue != null && MessageDigest.isEqual(
+                headerValue.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String token() {
+        return token;
+    }
+
+    /**
+     * 64-bit FNV-1a of the characters, finished with the MurmurHash3 mix so that ids differing in
+     * their last characters land far apart. Unlike {@link String#hashCode()} it spreads over the
+     * whole ring, and it is the same on every JVM.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,80 +1,495 @@
 package com.tecnocampus.examsimulation.api.application;
 
+import com.tecnocampus.examsimulation.api.domain.BatchReport;
+import com.tecnocampus.examsimulation.api.domain.Battle;
+import com.tecnocampus.examsimulation.api.domain.InvestmentType;
 import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import com.tecnocampus.examsimulation.api.domain.ProductionReport;
+import com.tecnocampus.examsimulation.api.domain.SimulationReport;
+import com.tecnocampus.examsimulation.api.domain.TournamentReport;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
+@Timed(value = "kingdom.service", histogram = true)
 public class KingdomService {
+    private static final Logger log = LoggerFactory.getLogger(KingdomService.class);
+    private static final int MAX_ATTACK_ATTEMPTS = 5;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_TOURNAMENT_SIZE = 100_000;
+    // The order of KingdomLeaderboard
+    private static final Comparator<Kingdom> RICHEST_FIRST = Comparator.comparingInt(Kingdom::getGold).reversed()
+            .thenComparing(Kingdom::getId);
+
     private final KingdomRepository kingdomRepository;
+    private final KingdomSimulator simulator;
+    private final KingdomLocks locks;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final int batchChunkSize;
+    private final ApplicationEventPublisher events;
+    private final KingdomRing ring;
+    private final KingdomPeers peers;
+    private final KingdomSettlement settlement;
+
+    private final Counter kingdomsFed;
+    private final Counter kingdomsStarved;
+    private final Counter kingdomsDeleted;
+    private final Counter attackerWins;
+    private final Counter defenderWins;
+    private final Counter investmentsWithoutGold;
+    private final Counter investmentsWithInvalidType;
 
-    public KingdomService(KingdomRepository kingdomRepository) {
+    public KingdomService(KingdomRepository kingdomRepository, KingdomSimulator simulator, KingdomLocks locks,
+                          PlatformTransactionManager transactionManager, Validator validator,
+                          @Value("${kingdom.batch.chunk-size:1000}") int batchChunkSize,
+                          ApplicationEventPublisher events, ObjectProvider<KingdomRing> ring,
+                          ObjectProvider<KingdomPeers> peers, KingdomSettlement settlement,
+                          MeterRegistry meterRegistry) {
         this.kingdomRepository = kingdomRepository;
+        this.simulator = simulator;
+        this.locks = locks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = validator;
+        this.batchChunkSize = batchChunkSize;
+        this.events = events;
+        this.ring = ring.getIfAvailable();
+        this.peers = peers.getIfAvailable();
+        this.settlement = settlement;
+
+        this.kingdomsFed = productionCounter(meterRegistry, "fed");
+        this.kingdomsStarved = productionCounter(meterRegistry, "starved");
+        this.kingdomsDeleted = productionCounter(meterRegistry, "deleted");
+        this.attackerWins = attackCounter(meterRegistry, "attacker");
+        this.defenderWins = attackCounter(meterRegistry, "defender");
+        this.investmentsWithoutGold = rejectedInvestmentCounter(meterRegistry, "not_enough_gold");
+        this.investmentsWithInvalidType = rejectedInvestmentCounter(meterRegistry, "invalid_type");
+    }
+
+    private static Counter productionCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("kingdom.production")
+                .description("Kingdoms processed by daily production (starved: ran out of food)")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static Counter attackCounter(MeterRegistry meterRegistry, String winner) {
+        return Counter.builder("kingdom.attacks")
+                .description("Resolved attacks by winner")
+                .tag("winner", winner)
+                .register(meterRegistry);
+    }
+
+    private static Counter rejectedInvestmentCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("kingdom.investments.rejected")
+                .description("Rejected investments by reason")
+                .tag("reason", reason)
+                .register(meterRegistry);
     }
 
     @Transactional
     public Kingdom createKingdom(Kingdom kingdom) {
-        return kingdomRepository.save(kingdom);
+        prepareNew(kingdom);
+        return changed(kingdomRepository.save(kingdom));
     }
 
-    @Transactional
-    public Kingdom startDailyProduction(String id) {
-        Kingdom kingdom = kingdomRepository.findById(id)
-                .orElseThrow(() -> new NoSuchElementException("Kingdom not found"));
+    /**
+     * Only the resources of a new kingdom come from the request. An id or version sent with it
+     * would make saving it update an existing kingdom, so they are cleared, and it starts settled
+     * today whatever day it claims.
+     */
+    private void prepareNew(Kingdom kingdom) {
+        kingdom.setId(null);
+        kingdom.setVersion(null);
+        kingdom.setLastSettled(settlement.today());
+    }
 
-        if (kingdom.getCitizens() == 0) {
-            kingdomRepository.delete(id);
-            throw new IllegalStateException("Kingdom has no citizens and was deleted");
+    /**
+     * Creates kingdoms in JDBC batches of {@code kingdom.batch.chunk-size}, each chunk in its own
+     * transaction. Invalid kingdoms, and null entries for kingdoms that could not be read, are
+     * reported by index and skipped without aborting the rest of the batch.
+     *
+     * If {@code kingdoms} fails with an {@link UncheckedIOException}, as a stream of malformed JSON
+     * does, the kingdoms read until then are still created and the rest of the batch is reported as
+     * a single failure at the index where reading stopped. The ids in the report tell the caller
+     * which kingdoms exist.
+     */
+    public BatchReport createKingdoms(Iterator<Kingdom> kingdoms) {
+        BatchReport report = new BatchReport();
+        List<Kingdom> chunk = new ArrayList<>(batchChunkSize);
+        List<Integer> indexes = new ArrayList<>(batchChunkSize);
+        int index = 0;
+        try {
+            for (; kingdoms.hasNext(); index++) {
+                Kingdom kingdom = kingdoms.next();
+                if (kingdom == null) {
+                    report.addFailure(index, "Malformed kingdom");
+                    continue;
+                }
+                Set<ConstraintViolation<Kingdom>> violations = validator.validate(kingdom);
+                if (!violations.isEmpty()) {
+                    report.addFailure(index, violations.stream()
+                            .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                            .sorted()
+                            .collect(Collectors.joining(", ")));
+                    continue;
+                }
+                prepareNew(kingdom);
+                chunk.add(kingdom);
+                indexes.add(index);
+                if (chunk.size() == batchChunkSize) {
+                    insertChunk(chunk, indexes, report);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            insertChunk(chunk, indexes, report);
+            report.addFailure(index, "Malformed JSON, the rest of the batch was not read");
+            return report;
         }
+        insertChunk(chunk, indexes, report);
+        return report;
+    }
 
-        int foodNeeded = kingdom.getCitizens();
-        if (kingdom.getFood() >= foodNeeded) {
-            kingdom.setFood(kingdom.getFood() - foodNeeded);
-            kingdom.setGold(kingdom.getGold() + (2 * kingdom.getCitizens()));
-        } else {
-            kingdom.setCitizens(kingdom.getFood());
-            kingdom.setFood(0);
-            kingdom.setGold(kingdom.getGold() + (2 * kingdom.getCitizens()));
+    private void insertChunk(List<Kingdom> chunk, List<Integer> indexes, BatchReport report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> kingdomRepository.insertAll(chunk).forEach(this::changed));
+            chunk.forEach(kingdom -> report.addCreated(kingdom.getId()));
+        } catch (DataAccessException e) {
+            // Find the offending rows one by one so the rest of the chunk is still created
+            for (int i = 0; i < chunk.size(); i++) {
+                Kingdom kingdom = chunk.get(i);
+                kingdom.setId(null);
+                try {
+                    transactionTemplate.executeWithoutResult(status -> changed(kingdomRepository.save(kingdom)));
+                    report.addCreated(kingdom.getId());
+                } catch (DataAccessException rowException) {
+                    report.addFailure(indexes.get(i), rowException.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+        chunk.clear();
+        indexes.clear();
+    }
 
-            if (kingdom.getCitizens() == 0) {
-                kingdomRepository.delete(id);
+    /**
+     * Runs one day of production holding the kingdom's lock, see {@link KingdomLocks}. With lazy
+     * production the calendar decides how many days run, so this only settles the days due.
+     *
+     * @throws IllegalStateException if the kingdom starved and was deleted, once the deletion is committed
+     */
+    public Kingdom startDailyProduction(String id) {
+        if (settlement.isLazy()) {
+            Kingdom settled = settle(id);
+            if (settled == null) {
                 throw new IllegalStateException("Kingdom has no citizens left and was deleted");
             }
+            return settled;
+        }
+        Kingdom produced = locks.withLock(id, () -> transactionTemplate.execute(status -> produceOrDelete(id)));
+        if (produced == null) {
+            kingdomsDeleted.increment();
+            throw new IllegalStateException("Kingdom has no citizens left and was deleted");
+        }
+        return produced;
+    }
+
+    /**
+     * The kingdom after a day of production, or null if it starved and was deleted.
+     */
+    private Kingdom produceOrDelete(String id) {
+        LocalDate today = settlement.today();
+        Optional<Kingdom> produced = kingdomRepository.produce(id, today);
+        if (produced.isPresent()) {
+            return countProduction(produced.get());
         }
 
-        return kingdomRepository.save(kingdom);
+        if (kingdomRepository.deleteIfStarving(id)) {
+            events.publishEvent(new KingdomChangedEvent(id, null));
+            return null;
+        }
+
+        // The kingdom was fed concurrently between both statements, try once more
+        return countProduction(kingdomRepository.produce(id, today)
+                .orElseThrow(() -> new NoSuchElementException("Kingdom not found")));
     }
 
-    @Transactional
-    public Kingdom invest(String id, String type, int gold) {
-        Kingdom kingdom = kingdomRepository.findById(id)
+    /**
+     * Settles the production days due on a kingdom if there are any, see {@link KingdomSettlement}.
+     * Kingdoms already settled today are only read, without taking their lock.
+     */
+    private void settleDue(String id) {
+        if (settlement.isLazy() && kingdomRepository.findById(id).filter(settlement::isDue).isPresent()) {
+            settle(id);
+        }
+    }
+
+    /**
+     * The kingdom with its due production days settled holding its lock, or null if it starved on
+     * one of them and was deleted.
+     */
+    private Kingdom settle(String id) {
+        Kingdom settled = locks.withLock(id, () -> transactionTemplate.execute(status -> settleOrDelete(id)));
+        if (settled == null) {
+            kingdomsDeleted.increment();
+        }
+        return settled;
+    }
+
+    private Kingdom settleOrDelete(String id) {
+        Kingdom kingdom = kingdomRepository.findByIdForUpdate(id)
                 .orElseThrow(() -> new NoSuchElementException("Kingdom not found"));
+        if (!settlement.isDue(kingdom)) {
+            return kingdom;
+        }
+        if (settlement.settle(kingdom)) {
+            return changed(kingdomRepository.save(kingdom));
+        }
+        deleteStarved(kingdom);
+        events.publishEvent(new KingdomChangedEvent(kingdom.getId(), null));
+        return null;
+    }
 
-        if (kingdom.getGold() < gold) {
-            throw new IllegalArgumentException("Not enough gold");
+    /**
+     * Deletes a kingdom that starved while its production was settled.
+     */
+    private void deleteStarved(Kingdom kingdom) {
+        // Saving first checks the version, so only the kingdom that was settled is deleted
+        kingdomRepository.save(kingdom);
+        kingdomRepository.deleteIfStarving(kingdom.getId());
+    }
+
+    private Kingdom countProduction(Kingdom kingdom) {
+        (kingdom.getFood() == 0 ? kingdomsStarved : kingdomsFed).increment();
+        return changed(kingdom);
+    }
+
+    /**
+     * Publishes the change, which listeners receive once the current transaction commits.
+     */
+    private Kingdom changed(Kingdom kingdom) {
+        events.publishEvent(new KingdomChangedEvent(kingdom.getId(), kingdom));
+        return kingdom;
+    }
+
+    /**
+     * Runs one day of production for every kingdom. With lazy production this settles every kingdom
+     * with days due instead, so the report only counts those.
+     */
+    public ProductionReport startWorldProduction() {
+        if (settlement.isLazy()) {
+            return settleWorld();
         }
+        ProductionReport report = transactionTemplate.execute(status -> {
+            events.publishEvent(new WorldChangedEvent());
+            return kingdomRepository.applyDailyProductionToAll(settlement.today());
+        });
+        kingdomRepository.reloadLeaderboard();
+        kingdomsFed.increment(report.getProcessed() - report.getStarved() - report.getDeleted());
+        kingdomsStarved.increment(report.getStarved());
+        kingdomsDeleted.increment(report.getDeleted());
+        return report;
+    }
 
-        kingdom.setGold(kingdom.getGold() - gold);
+    /**
+     * Settles every kingdom with production days due, in chunks of {@code kingdom.batch.chunk-size}
+     * kingdoms each locked and written in its own transaction. Only the ids of the due kingdoms are
+     * read, through the index on the last settled day, so a world that is already settled costs
+     * one index lookup.
+     */
+    private ProductionReport settleWorld() {
+        List<String> due = kingdomRepository.findIdsSettledBefore(settlement.today());
 
-        switch (type.toLowerCase()) {
-            case "food":
-                kingdom.setFood(kingdom.getFood() + (gold * 2));
-                break;
-            case "citizens":
-                kingdom.setCitizens(kingdom.getCitizens() + gold);
-                break;
-            default:
-                throw new IllegalArgumentException("Invalid investment type");
+        ProductionReport report = new ProductionReport();
+        for (int from = 0; from < due.size(); from += batchChunkSize) {
+            List<String> chunk = due.subList(from, Math.min(from + batchChunkSize, due.size()));
+            ProductionReport settled = locks.withLocks(chunk,
+                    () -> transactionTemplate.execute(status -> settleChunk(chunk)));
+            report.setProcessed(report.getProcessed() + settled.getProcessed());
+            report.setStarved(report.getStarved() + settled.getStarved());
+            report.setDeleted(report.getDeleted() + settled.getDeleted());
+            report.setGoldMinted(report.getGoldMinted() + settled.getGoldMinted());
         }
+        if (!due.isEmpty()) {
+            kingdomRepository.reloadLeaderboard();
+        }
+        kingdomsFed.increment(report.getProcessed() - report.getStarved() - report.getDeleted());
+        kingdomsStarved.increment(report.getStarved());
+        kingdomsDeleted.increment(report.getDeleted());
+        return report;
+    }
 
-        return kingdomRepository.save(kingdom);
+    private ProductionReport settleChunk(List<String> ids) {
+        List<Kingdom> settled = new ArrayList<>();
+        long starved = 0;
+        long deleted = 0;
+        long goldMinted = 0;
+        for (Kingdom kingdom : kingdomRepository.findAllByIdForUpdate(ids)) {
+            // Read, attacked or settled by another request since the scan
+            if (!settlement.isDue(kingdom)) {
+                continue;
+            }
+            int gold = kingdom.getGold();
+            boolean survived = settlement.settle(kingdom);
+            goldMinted += kingdom.getGold() - gold;
+            if (survived) {
+                settled.add(kingdom);
+                starved += kingdom.getFood() == 0 ? 1 : 0;
+            } else {
+                deleteStarved(kingdom);
+                deleted++;
+            }
+        }
+        kingdomRepository.updateAll(settled);
+        events.publishEvent(new WorldChangedEvent());
+        return new ProductionReport(settled.size() + deleted, starved, deleted, goldMinted);
+    }
+
+    /**
+     * Runs {@code days} days of daily production for every kingdom at once, with the same outcome
+     * as calling {@link #startDailyProduction(String)} on each kingdom every day. Unless it is a dry
+     * run the final state is written back in one transaction holding the locks of every kingdom
+     * simulated, see {@link #writeSimulation(List, List)}.
+     *
+     * With lazy production the days run on top of the production due, which is settled first.
+     *
+     * @throws OptimisticLockingFailureException if a kingdom changed since the world was loaded,
+     *         in which case nothing is written
+     */
+    public SimulationReport simulate(int days, boolean dryRun) {
+        if (days < 1) {
+            throw new IllegalArgumentException("days must be positive");
+        }
+        List<Kingdom> world = kingdomRepository.findAll();
+        List<Kingdom> starvedBefore = new ArrayList<>();
+        world.removeIf(kingdom -> settlement.isDue(kingdom) && !settlement.settle(kingdom)
+                && starvedBefore.add(kingdom));
+        KingdomSimulator.Outcome simulated = simulator.simulate(world, days);
+        List<Kingdom> deleted = new ArrayList<>(starvedBefore);
+        deleted.addAll(simulated.deleted());
+        KingdomSimulator.Outcome outcome = new KingdomSimulator.Outcome(simulated.survivors(), deleted,
+                simulated.goldMinted());
+        if (!dryRun) {
+            List<Kingdom> written = new ArrayList<>(outcome.survivors());
+            written.addAll(outcome.deleted());
+            List<String> ids = written.stream().map(Kingdom::getId).toList();
+            locks.withLocks(ids, () -> {
+                transactionTemplate.executeWithoutResult(status -> writeSimulation(written, outcome.deleted()));
+                return null;
+            });
+            kingdomRepository.reloadLeaderboard();
+            kingdomsDeleted.increment(outcome.deleted().size());
+        }
+        return new SimulationReport(days, dryRun, world.size() + starvedBefore.size(), outcome.survivors().size(),
+                outcome.deleted().size(),
+                outcome.goldMinted(), dryRun ? outcome.survivors() : null);
+    }
+
+    /**
+     * Locks the rows of every kingdom simulated and checks that none changed since it was loaded
+     * before writing any of them, so a concurrent investment or attack fails the write-back as a
+     * whole instead of leaving the world half simulated.
+     */
+    private void writeSimulation(List<Kingdom> written, List<Kingdom> deleted) {
+        Map<String, Long> versions = new HashMap<>();
+        for (Kingdom kingdom : kingdomRepository.findAllByIdForUpdate(written.stream().map(Kingdom::getId).toList())) {
+            versions.put(kingdom.getId(), kingdom.getVersion());
+        }
+        for (Kingdom kingdom : written) {
+            if (!kingdom.getVersion().equals(versions.get(kingdom.getId()))) {
+                throw new OptimisticLockingFailureException("Kingdom " + kingdom.getId() + " was modified concurrently");
+            }
+        }
+        // Starved kingdoms are written first so that only the kingdoms that were simulated are deleted
+        kingdomRepository.updateAll(written);
+        for (Kingdom kingdom : deleted) {
+            kingdomRepository.deleteIfStarving(kingdom.getId());
+        }
+        events.publishEvent(new WorldChangedEvent());
     }
 
+    /**
+     * Spends {@code gold} on food or citizens holding the kingdom's lock, see {@link KingdomLocks}.
+     */
+    public Kingdom invest(String id, String type, int gold) {
+        InvestmentType investment = InvestmentType.parse(type);
+        if (investment == null) {
+            investmentsWithInvalidType.increment();
+            throw new IllegalArgumentException("Invalid investment type");
+        }
+        return locks.withLock(id, () -> {
+            settleDue(id);
+            return transactionTemplate.execute(status -> applyInvestment(id, investment, gold));
+        });
+    }
+
+    private Kingdom applyInvestment(String id, InvestmentType type, int gold) {
+        Optional<Kingdom> kingdom = switch (type) {
+            case FOOD -> kingdomRepository.investInFood(id, gold);
+            case CITIZENS -> kingdomRepository.investInCitizens(id, gold);
+        };
+
+        if (kingdom.isPresent()) {
+            return changed(kingdom.get());
+        }
+        if (kingdomRepository.existsById(id)) {
+            investmentsWithoutGold.increment();
+            throw new IllegalArgumentException("Not enough gold");
+        }
+        throw new NoSuchElementException("Kingdom not found");
+    }
+
+    /**
+     * The kingdom with its due production settled. Lists, the leaderboard and the export show
+     * kingdoms as they were last settled, until world production settles them all.
+     */
     public Kingdom getKingdom(String id) {
-        return kingdomRepository.findById(id)
+        Kingdom kingdom = kingdomRepository.findById(id)
                 .orElseThrow(() -> new NoSuchElementException("Kingdom not found"));
+        if (!settlement.isDue(kingdom)) {
+            return kingdom;
+        }
+        Kingdom settled = settle(id);
+        if (settled == null) {
+            throw new NoSuchElementException("Kingdom not found");
+        }
+        return settled;
     }
 
     public Kingdom getRichestKingdom() {
@@ -82,14 +497,266 @@ public class KingdomService {
                 .orElseThrow(() -> new NoSuchElementException("No kingdoms found"));
     }
 
-    @Transactional
+    public List<Kingdom> getKingdoms(String after, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return kingdomRepository.findPage(after, limit);
+    }
+
+    public void exportKingdoms(Consumer<Kingdom> consumer) {
+        kingdomRepository.forEach(consumer);
+    }
+
+    public List<Kingdom> getTopKingdoms(int n) {
+        if (n < 1 || n > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("n must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return kingdomRepository.findTop(n);
+    }
+
+    /**
+     * The richest kingdom of every node of the cluster, see {@link KingdomPeers}. Outside a cluster
+     * the same as {@link #getRichestKingdom()}, which a node asked by another one answers with.
+     */
+    public Kingdom getRichestKingdomOfCluster() {
+        if (peers == null) {
+            return getRichestKingdom();
+        }
+        return Stream.concat(kingdomRepository.findRichest().stream(), peers.findRichest().stream())
+                .min(RICHEST_FIRST)
+                .orElseThrow(() -> new NoSuchElementException("No kingdoms found"));
+    }
+
+    /**
+     * The {@code n} richest kingdoms of every node merged, like {@link #getRichestKingdomOfCluster()}.
+     */
+    public List<Kingdom> getTopKingdomsOfCluster(int n) {
+        List<Kingdom> top = getTopKingdoms(n);
+        if (peers == null) {
+            return top;
+        }
+        return Stream.concat(top.stream(), peers.findTop(n).stream())
+                .sorted(RICHEST_FIRST)
+                .limit(n)
+                .toList();
+    }
+
+    /**
+     * A page of every node merged, like {@link #getRichestKingdomOfCluster()}. Ids are compared as
+     * strings, which for lowercase UUIDs is the order the repositories page in.
+     */
+    public List<Kingdom> getKingdomsOfCluster(String after, int limit) {
+        List<Kingdom> page = getKingdoms(after, limit);
+        if (peers == null) {
+            return page;
+        }
+        return Stream.concat(page.stream(), peers.findPage(after, limit).stream())
+                .sorted(Comparator.comparing(Kingdom::getId))
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * The kingdoms of this node, then those of every other node.
+     */
+    public void exportKingdomsOfCluster(Consumer<Kingdom> consumer) {
+        exportKingdoms(consumer);
+        if (peers != null) {
+            peers.forEach(consumer);
+        }
+    }
+
+    /**
+     * Runs world production on every node and adds up their reports. Each node runs it in its own
+     * transaction, so a node that fails leaves the production of the others in place.
+     */
+    public ProductionReport startWorldProductionOfCluster() {
+        ProductionReport report = startWorldProduction();
+        if (peers == null) {
+            return report;
+        }
+        for (ProductionReport other : peers.startWorldProduction()) {
+            report = new ProductionReport(report.getProcessed() + other.getProcessed(),
+                    report.getStarved() + other.getStarved(), report.getDeleted() + other.getDeleted(),
+                    report.getGoldMinted() + other.getGoldMinted());
+        }
+        return report;
+    }
+
+    /**
+     * Resolves an attack in its own transaction, holding the locks of both kingdoms. Both rows are
+     * also locked in id order, so opposite attacks between the same kingdoms cannot deadlock, and
+     * the whole attack is retried a bounded number of times if a lock times out or a versioned
+     * write loses a race.
+     *
+     * In a cluster the attacker is owned by this node, and a target owned by another node is
+     * attacked through {@link #attackRemote(String, String)}.
+     */
     public Kingdom attack(String attackerId, String targetId) {
-        Kingdom attacker = kingdomRepository.findById(attackerId)
-                .orElseThrow(() -> new NoSuchElementException("Attacker kingdom not found"));
-        Kingdom target = kingdomRepository.findById(targetId)
+        if (attackerId.equals(targetId)) {
+            throw new IllegalArgumentException("A kingdom cannot attack itself");
+        }
+        if (ring != null && !ring.isLocal(targetId)) {
+            return attackRemote(attackerId, targetId);
+        }
+        return locks.withLocks(attackerId, targetId, () -> {
+            settleDue(attackerId);
+            settleDue(targetId);
+            return attackWithRetries(attackerId, targetId);
+        });
+    }
+
+    private Kingdom attackWithRetries(String attackerId, String targetId) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                AttackResult battle = transactionTemplate.execute(status -> resolveAttack(attackerId, targetId));
+                (battle.attackerWon() ? attackerWins : defenderWins).increment();
+                return battle.attacker();
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= MAX_ATTACK_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private AttackResult resolveAttack(String attackerId, String targetId) {
+        Kingdom attacker;
+        Kingdom target;
+        if (attackerId.compareTo(targetId) < 0) {
+            attacker = lockAttacker(attackerId);
+            target = lockTarget(targetId);
+        } else {
+            target = lockTarget(targetId);
+            attacker = lockAttacker(attackerId);
+        }
+
+        boolean attackerWon = fight(attacker, target);
+        changed(kingdomRepository.save(attacker));
+        changed(kingdomRepository.save(target));
+
+        return new AttackResult(attacker, attackerWon);
+    }
+
+    /**
+     * Two-party attack on a target owned by another node, optimistic on both sides so no row lock
+     * or connection is held while the other node answers. Holding the attacker's stripe, the
+     * attacker and the target are read, the battle is resolved here, and the target's result is
+     * sent to its owner with the version it was read at. The owner applies it only if the target has
+     * not changed since and is not locked there, so two nodes attacking each other's kingdoms
+     * cannot wait on each other. The attacker is then saved with its own version check. When either
+     * side lost a race the attack is retried after a random pause, with the stripe released; if the
+     * attacker lost it after the target was written, the target is put back as it was first.
+     */
+    private Kingdom attackRemote(String attackerId, String targetId) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                AttackResult battle = locks.withLock(attackerId, () -> resolveRemoteAttack(attackerId, targetId));
+                (battle.attackerWon() ? attackerWins : defenderWins).increment();
+                return battle.attacker();
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= MAX_ATTACK_ATTEMPTS) {
+                    throw e;
+                }
+                backOff(attempt);
+            }
+        }
+    }
+
+    private static void backOff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, 1L << (attempt + 1)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying an attack", e);
+        }
+    }
+
+    private AttackResult resolveRemoteAttack(String attackerId, String targetId) {
+        // The target is settled by its owner when it is read
+        settleDue(attackerId);
+        // A copy, as the repository may hand out its cached instance
+        Kingdom attacker = new Kingdom(kingdomRepository.findById(attackerId)
+                .orElseThrow(() -> new NoSuchElementException("Attacker kingdom not found")));
+        Kingdom target = peers.find(targetId)
                 .orElseThrow(() -> new NoSuchElementException("Target kingdom not found"));
+        Kingdom before = new Kingdom(target);
 
-        if (attacker.getCitizens() > target.getCitizens()) {
+        boolean attackerWon = fight(attacker, target);
+        Kingdom applied = peers.applyBattle(targetId, target.getGold(), target.getCitizens(), target.getVersion());
+        try {
+            transactionTemplate.executeWithoutResult(status -> changed(kingdomRepository.save(attacker)));
+        } catch (RuntimeException e) {
+            compensate(before, applied);
+            throw e;
+        }
+        return new AttackResult(attacker, attackerWon);
+    }
+
+    /**
+     * Puts back a remote target whose attacker could not be saved, retrying while it is locked on
+     * its node. If the target changed again in between, or its node cannot be reached, it keeps the
+     * result of the battle; that window is logged rather than closed, as closing it would take a
+     * distributed commit.
+     */
+    private void compensate(Kingdom before, Kingdom applied) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                peers.applyBattle(before.getId(), before.getGold(), before.getCitizens(), applied.getVersion());
+                return;
+            } catch (CannotAcquireLockException e) {
+                if (attempt < MAX_ATTACK_ATTEMPTS) {
+                    backOff(attempt);
+                    continue;
+                }
+                logLostCompensation(applied, e);
+                return;
+            } catch (RuntimeException e) {
+                logLostCompensation(applied, e);
+                return;
+            }
+        }
+    }
+
+    private static void logLostCompensation(Kingdom applied, RuntimeException e) {
+        log.error("Could not restore kingdom {} after a failed attack, it keeps {} gold and {} citizens",
+                applied.getId(), applied.getGold(), applied.getCitizens(), e);
+    }
+
+    /**
+     * Sets the gold and citizens of a kingdom owned by this node, as resolved by the node of the
+     * attacker in a two-party attack.
+     *
+     * @throws OptimisticLockingFailureException if the kingdom is no longer at {@code expectedVersion}
+     * @throws CannotAcquireLockException if a request on this node holds the kingdom
+     */
+    public Kingdom applyBattleResult(String id, int gold, int citizens, long expectedVersion) {
+        return locks.tryWithLock(id, () -> {
+            settleDue(id);
+            return transactionTemplate.execute(status -> applyBattle(id, gold, citizens, expectedVersion));
+        });
+    }
+
+    private Kingdom applyBattle(String id, int gold, int citizens, long expectedVersion) {
+        Kingdom kingdom = lockTarget(id);
+        if (kingdom.getVersion() != expectedVersion) {
+            throw new OptimisticLockingFailureException("Kingdom " + id + " was modified concurrently");
+        }
+        kingdom.setGold(gold);
+        kingdom.setCitizens(citizens);
+        return changed(kingdomRepository.save(kingdom));
+    }
+
+    private record AttackResult(Kingdom attacker, boolean attackerWon) {
+    }
+
+    /**
+     * Applies the attack rules to both kingdoms and tells whether the attacker won.
+     */
+    static boolean fight(Kingdom attacker, Kingdom target) {
+        boolean attackerWon = attacker.getCitizens() > target.getCitizens();
+        if (attackerWon) {
             // Attacker wins
             int stolenGold = target.getGold();
             int stolenCitizens = target.getCitizens() / 2;
@@ -111,9 +778,105 @@ public class KingdomService {
             attacker.setCitizens(attacker.getCitizens() - stolenCitizens);
         }
 
-        kingdomRepository.save(attacker);
-        kingdomRepository.save(target);
+        return attackerWon;
+    }
 
-        return attacker;
+    /**
+     * Resolves {@code battles} in order within one transaction. Every kingdom involved is locked
+     * and read once, the attacks are applied in memory with the rules of
+     * {@link #attack(String, String)}, and the kingdoms that changed are written in one batch.
+     * Invalid battles are reported by index and skipped. Like single attacks, the whole tournament
+     * is retried a bounded number of times if it loses a race.
+     */
+    public TournamentReport attackAll(List<Battle> battles) {
+        if (battles.size() > MAX_TOURNAMENT_SIZE) {
+            throw new IllegalArgumentException("A tournament has at most " + MAX_TOURNAMENT_SIZE + " battles");
+        }
+        return locks.withLocks(fighters(battles), () -> tournamentWithRetries(battles));
+    }
+
+    private TournamentReport tournamentWithRetries(List<Battle> battles) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                long start = System.nanoTime();
+                TournamentReport report = transactionTemplate.execute(status -> resolveTournament(battles));
+                double seconds = (System.nanoTime() - start) / 1e9;
+                report.setBattlesPerSecond(seconds > 0 ? report.getResolved() / seconds : 0);
+                return report;
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= MAX_ATTACK_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static Set<String> fighters(List<Battle> battles) {
+        Set<String> ids = new HashSet<>();
+        for (Battle battle : battles) {
+            if (battle != null && battle.getAttackerId() != null && battle.getTargetId() != null) {
+                ids.add(battle.getAttackerId());
+                ids.add(battle.getTargetId());
+            }
+        }
+        return ids;
+    }
+
+    private TournamentReport resolveTournament(List<Battle> battles) {
+        Map<String, Kingdom> kingdoms = new HashMap<>();
+        Map<String, Kingdom> fought = new LinkedHashMap<>();
+        for (Kingdom kingdom : kingdomRepository.findAllByIdForUpdate(fighters(battles))) {
+            if (settlement.isDue(kingdom)) {
+                // Kingdoms that starved before the tournament are not found by its battles
+                if (!settlement.settle(kingdom)) {
+                    deleteStarved(kingdom);
+                    events.publishEvent(new KingdomChangedEvent(kingdom.getId(), null));
+                    continue;
+                }
+                fought.put(kingdom.getId(), kingdom);
+            }
+            kingdoms.put(kingdom.getId(), kingdom);
+        }
+
+        TournamentReport report = new TournamentReport();
+        long won = 0;
+        for (int index = 0; index < battles.size(); index++) {
+            Battle battle = battles.get(index);
+            if (battle == null || battle.getAttackerId() == null || battle.getTargetId() == null) {
+                report.addFailure(index, "Malformed battle");
+                continue;
+            }
+            Kingdom attacker = kingdoms.get(battle.getAttackerId());
+            Kingdom target = kingdoms.get(battle.getTargetId());
+            if (attacker == null) {
+                report.addFailure(index, "Attacker kingdom not found");
+            } else if (target == null) {
+                report.addFailure(index, "Target kingdom not found");
+            } else if (attacker == target) {
+                report.addFailure(index, "A kingdom cannot attack itself");
+            } else {
+                boolean attackerWon = fight(attacker, target);
+                report.addWin(index, (attackerWon ? attacker : target).getId());
+                fought.put(attacker.getId(), attacker);
+                fought.put(target.getId(), target);
+                won += attackerWon ? 1 : 0;
+            }
+        }
+        kingdomRepository.updateAll(new ArrayList<>(fought.values()));
+        fought.values().forEach(this::changed);
+
+        attackerWins.increment(won);
+        defenderWins.increment(report.getResolved() - won);
+        return report;
+    }
+
+    private Kingdom lockAttacker(String attackerId) {
+        return kingdomRepository.findByIdForUpdate(attackerId)
+                .orElseThrow(() -> new NoSuchElementException("Attacker kingdom not found"));
+    }
+
+    private Kingdom lockTarget(String targetId) {
+        return kingdomRepository.findByIdForUpdate(targetId)
+                .orElseThrow(() -> new NoSuchElementException("Target kingdom not found"));
     }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Daily production applied lazily, with {@code kingdom.production.mode=lazy}: instead of a write
+ * per kingdom every day, a kingdom remembers the last day its production was applied and the days
+ * since are run the next time {@link KingdomService} reads or changes it. A day is a calendar day
+ * of the {@link Clock} bean, or of the system clock if there is none.
+ *
+ * With {@code scheduled}, the default, production only runs when it is started through the API.
+ */
+@Component
+public class KingdomSettlement {
+    private final boolean lazy;
+    private final Clock clock;
+
+    public KingdomSettlement(@Value("${kingdom.production.mode:scheduled}") String mode, ObjectProvider<Clock> clock) {
+        this.lazy = switch (mode) {
+            case "lazy" -> true;
+            case "scheduled" -> false;
+            default -> throw new IllegalArgumentException("kingdom.production.mode must be scheduled or lazy");
+        };
+        this.clock = clock.getIfAvailable(Clock::systemDefaultZone);
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public LocalDate today() {
+        return LocalDate.now(clock);
+    }
+
+    /**
+     * Whether {@code kingdom} has production days to settle.
+     */
+    public boolean isDue(Kingdom kingdom) {
+        return lazy && kingdom.getLastSettled().isBefore(today());
+    }
+
+    /**
+     * Runs the production days since the kingdom was last settled, in place, and marks it settled
+     * today. Returns false if it ran out of citizens or food on one of them, in which case it must
+     * be deleted like {@link KingdomService#startDailyProduction(String)} would have.
+     */
+    public boolean settle(Kingdom kingdom) {
+        LocalDate today = today();
+        long days = ChronoUnit.DAYS.between(kingdom.getLastSettled(), today);
+        boolean survived = days <= 0 || KingdomSimulator.produce(kingdom, (int) Math.min(days, Integer.MAX_VALUE));
+        if (days > 0) {
+            kingdom.setLastSettled(today);
+        }
+        return survived;
+    }
+}
@@ -0,0 +1,119 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Runs the daily production of {@link KingdomService#startDailyProduction(String)} for many days on
+ * a copy of the world held in primitive arrays.
+ *
+ * A kingdom's production only depends on its own resources, so kingdoms are independent and are
+ * split across the common fork-join pool with a parallel stream. Each kingdom writes only its own
+ * array slots, which keeps the outcome deterministic whatever the partitioning.
+ */
+@Component
+public class KingdomSimulator {
+
+    /**
+     * Kingdoms that survive every day and kingdoms deleted along the way, with the resources they
+     * had when they were deleted, plus the gold produced by all of them.
+     */
+    public record Outcome(List<Kingdom> survivors, List<Kingdom> deleted, long goldMinted) {
+    }
+
+    /**
+     * Simulates {@code days} days on {@code kingdoms}, updating their gold, citizens and food in
+     * place. Throws {@link IllegalArgumentException} if a kingdom's gold would overflow.
+     */
+    public Outcome simulate(List<Kingdom> kingdoms, int days) {
+        int n = kingdoms.size();
+        int[] gold = new int[n];
+        int[] citizens = new int[n];
+        int[] food = new int[n];
+        boolean[] deleted = new boolean[n];
+        long[] minted = new long[n];
+        for (int i = 0; i < n; i++) {
+            Kingdom kingdom = kingdoms.get(i);
+            gold[i] = kingdom.getGold();
+            citizens[i] = kingdom.getCitizens();
+            food[i] = kingdom.getFood();
+        }
+
+        IntStream.range(0, n).parallel().forEach(i -> {
+            long[] state = {gold[i], citizens[i], food[i], 0};
+            deleted[i] = !run(state, days);
+            if (state[0] > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Simulation overflows the gold of kingdom " + kingdoms.get(i).getId());
+            }
+            gold[i] = (int) state[0];
+            citizens[i] = (int) state[1];
+            food[i] = (int) state[2];
+            minted[i] = state[3];
+        });
+
+        List<Kingdom> survivors = new ArrayList<>();
+        List<Kingdom> deletedKingdoms = new ArrayList<>();
+        long goldMinted = 0;
+        for (int i = 0; i < n; i++) {
+            Kingdom kingdom = kingdoms.get(i);
+            kingdom.setGold(gold[i]);
+            kingdom.setCitizens(citizens[i]);
+            kingdom.setFood(food[i]);
+            (deleted[i] ? deletedKingdoms : survivors).add(kingdom);
+            goldMinted += minted[i];
+        }
+        return new Outcome(survivors, deletedKingdoms, goldMinted);
+    }
+
+    /**
+     * Runs {@code days} days of production on one kingdom, updating its gold, citizens and food in
+     * place. Returns false if the kingdom ran out of citizens or food and must be deleted, in which
+     * case it keeps the resources it had on that day. Throws {@link IllegalArgumentException} if its
+     * gold would overflow, leaving the kingdom unchanged.
+     */
+    public static boolean produce(Kingdom kingdom, int days) {
+        long[] state = {kingdom.getGold(), kingdom.getCitizens(), kingdom.getFood(), 0};
+        boolean survived = run(state, days);
+        if (state[0] > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Simulation overflows the gold of kingdom " + kingdom.getId());
+        }
+        kingdom.setGold((int) state[0]);
+        kingdom.setCitizens((int) state[1]);
+        kingdom.setFood((int) state[2]);
+        return survived;
+    }
+
+    /**
+     * Runs {@code days} days on {gold, citizens, food, gold minted}. Returns false if the kingdom
+     * has no citizens or food left on one of them.
+     */
+    private static boolean run(long[] state, int days) {
+        long g = state[0];
+        long c = state[1];
+        long f = state[2];
+        int remaining = days;
+        boolean survived = true;
+        while (remaining > 0) {
+            if (c == 0 || f == 0) {
+                survived = false;
+                break;
+            }
+            // While food covers every citizen a day only moves food into gold, so skip those days at once
+            long fullDays = f >= c ? Math.min(remaining, f / c) : 1;
+            long fed = Math.min(c, f);
+            g += 2 * fed * fullDays;
+            state[3] += 2 * fed * fullDays;
+            c = fed;
+            f -= fed * fullDays;
+            remaining -= (int) fullDays;
+        }
+        state[0] = g;
+        state[1] = c;
+        state[2] = f;
+        return survived;
+    }
+}
@@ -0,0 +1,311 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind persistence of {@link ColumnarKingdomRepository} to the kingdoms table, enabled with
+ * {@code kingdom.write-behind.enabled}. The columns stay the authoritative state: they are loaded
+ * from the table on startup, and every change marks its kingdom dirty instead of being written.
+ *
+ * Dirty kingdoms are kept by id with their latest state only, so a kingdom changed dozens of times
+ * between flushes is written once. A single flusher thread writes them in JDBC batches, in one
+ * transaction, once the oldest change is {@code kingdom.write-behind.interval} old or
+ * {@code kingdom.write-behind.batch-size} kingdoms are dirty, whichever comes first. A failed flush
+ * is retried on the next interval without overwriting newer changes.
+ *
+ * Durability lag is bounded in time by the interval plus the time a flush takes, and in size by
+ * {@code kingdom.write-behind.max-pending}: once that many kingdoms are dirty, writers wait for
+ * the flusher to take them, which also stops memory from growing while the database is down.
+ * Everything still dirty is flushed on shutdown; changes since the last flush are lost on a crash.
+ */
+@Component
+@ConditionalOnProperty(name = "kingdom.write-behind.enabled", havingValue = "true")
+public class KingdomWriteBehind {
+    private static final Logger log = LoggerFactory.getLogger(KingdomWriteBehind.class);
+
+    private static final String SELECT_SQL = "SELECT id, gold, citizens, food, date_of_creation, version, last_settled "
+            + "FROM kingdoms";
+    private static final String MERGE_SQL = "MERGE INTO kingdoms (id, gold, citizens, food, date_of_creation, version, "
+            + "last_settled) KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_SQL = "DELETE FROM kingdoms WHERE id = ?";
+
+    /**
+     * Receives the kingdoms of the table on startup.
+     */
+    public interface Loader {
+        void put(long idHigh, long idLow, int gold, int citizens, int food, int dateOfCreation, long version,
+                 int lastSettled);
+    }
+
+    private record Change(long idHigh, long idLow, boolean deleted, int gold, int citizens, int food,
+                          int dateOfCreation, long version, int lastSettled) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long intervalNanos;
+    private final int batchSize;
+    private final int maxPending;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition due = lock.newCondition();
+    private final Condition taken = lock.newCondition();
+    private Map<UUID, Change> pending = new HashMap<>();
+    // When the oldest change in pending was made
+    private long oldestPending;
+    private boolean closed;
+    private Thread flusher;
+
+    private final Counter upserted;
+    private final Counter deleted;
+    private final Counter coalesced;
+    private final Counter failures;
+    private final Timer flushes;
+
+    public KingdomWriteBehind(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                              @Value("${kingdom.write-behind.interval:1s}") Duration interval,
+                              @Value("${kingdom.write-behind.batch-size:1000}") int batchSize,
+                              @Value("${kingdom.write-behind.max-pending:100000}") int maxPending,
+                              MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.intervalNanos = interval.toNanos();
+        this.batchSize = batchSize;
+        this.maxPending = Math.max(maxPending, batchSize);
+
+        this.upserted = rowCounter(meterRegistry, "upsert");
+        this.deleted = rowCounter(meterRegistry, "delete");
+        this.coalesced = Counter.builder("kingdom.write-behind.coalesced")
+                .description("Changes replaced by a newer change of the same kingdom before being written")
+                .register(meterRegistry);
+        this.failures = Counter.builder("kingdom.write-behind.failures")
+                .description("Flushes that failed and will be retried")
+                .register(meterRegistry);
+        this.flushes = Timer.builder("kingdom.write-behind.flush")
+                .description("Time to write one batch of dirty kingdoms")
+                .register(meterRegistry);
+        Gauge.builder("kingdom.write-behind.pending", this, KingdomWriteBehind::pendingCount)
+                .description("Dirty kingdoms not written yet")
+                .register(meterRegistry);
+        Gauge.builder("kingdom.write-behind.lag", this, KingdomWriteBehind::lagSeconds)
+                .description("Age of the oldest change not written yet")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    private static Counter rowCounter(MeterRegistry meterRegistry, String operation) {
+        return Counter.builder("kingdom.write-behind.rows")
+                .description("Kingdoms written by the flusher")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reads every kingdom of the table into {@code loader}.
+     */
+    public void load(Loader loader) {
+        jdbcTemplate.query(SELECT_SQL, (RowCallbackHandler) rs -> {
+            UUID id = rs.getObject(1, UUID.class);
+            loader.put(id.getMostSignificantBits(), id.getLeastSignificantBits(), rs.getInt(2), rs.getInt(3),
+                    rs.getInt(4), (int) rs.getObject(5, LocalDate.class).toEpochDay(), rs.getLong(6),
+                    (int) rs.getObject(7, LocalDate.class).toEpochDay());
+        });
+    }
+
+    public void start() {
+        flusher = Thread.ofPlatform().name("kingdom-write-behind").daemon().start(this::flushLoop);
+    }
+
+    public void put(long idHigh, long idLow, int gold, int citizens, int food, int dateOfCreation, long version,
+                    int lastSettled) {
+        record(new Change(idHigh, idLow, false, gold, citizens, food, dateOfCreation, version, lastSettled));
+    }
+
+    public void delete(long idHigh, long idLow) {
+        record(new Change(idHigh, idLow, true, 0, 0, 0, 0, 0, 0));
+    }
+
+    private void record(Change change) {
+        lock.lock();
+        try {
+            while (pending.size() >= maxPending && !closed) {
+                taken.awaitUninterruptibly();
+            }
+            if (pending.isEmpty()) {
+                oldestPending = System.nanoTime();
+            }
+            if (pending.put(new UUID(change.idHigh(), change.idLow()), change) != null) {
+                coalesced.increment();
+            }
+            if (pending.size() >= batchSize) {
+                due.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the flusher once it has written every kingdom still dirty.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        lock.lock();
+        try {
+            closed = true;
+            due.signal();
+            taken.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            flusher.join();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            Map<UUID, Change> batch;
+            long since;
+            boolean last;
+            lock.lock();
+            try {
+                while (!closed && !isDue()) {
+                    long waited = System.nanoTime() - oldestPending;
+                    due.awaitNanos(pending.isEmpty() ? intervalNanos : intervalNanos - waited);
+                }
+                batch = pending;
+                since = oldestPending;
+                pending = new HashMap<>();
+                last = closed;
+                taken.signalAll();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            if (!write(batch)) {
+                if (last) {
+                    log.error("Could not write {} kingdom changes on shutdown, they are lost", batch.size());
+                    return;
+                }
+                requeue(batch, since);
+                pause();
+            } else if (last) {
+                return;
+            }
+        }
+    }
+
+    private boolean isDue() {
+        return pending.size() >= batchSize
+                || (!pending.isEmpty() && System.nanoTime() - oldestPending >= intervalNanos);
+    }
+
+    private boolean write(Map<UUID, Change> batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        List<Change> puts = new ArrayList<>(batch.size());
+        List<Change> deletes = new ArrayList<>();
+        for (Change change : batch.values()) {
+            (change.deleted() ? deletes : puts).add(change);
+        }
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(MERGE_SQL, puts, batchSize, (ps, change) -> {
+                    ps.setObject(1, new UUID(change.idHigh(), change.idLow()));
+                    ps.setInt(2, change.gold());
+                    ps.setInt(3, change.citizens());
+                    ps.setInt(4, change.food());
+                    ps.setObject(5, LocalDate.ofEpochDay(change.dateOfCreation()));
+                    ps.setLong(6, change.version());
+                    ps.setObject(7, LocalDate.ofEpochDay(change.lastSettled()));
+                });
+                jdbcTemplate.batchUpdate(DELETE_SQL, deletes, batchSize,
+                        (ps, change) -> ps.setObject(1, new UUID(change.idHigh(), change.idLow())));
+            });
+        } catch (DataAccessException e) {
+            failures.increment();
+            log.warn("Writing {} kingdom changes failed, retrying", batch.size(), e);
+            return false;
+        }
+        flushes.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        upserted.increment(puts.size());
+        deleted.increment(deletes.size());
+        return true;
+    }
+
+    /**
+     * Puts a batch that could not be written back, unless its kingdoms changed again meanwhile.
+     */
+    private void requeue(Map<UUID, Change> batch, long since) {
+        lock.lock();
+        try {
+            if (pending.isEmpty() || since - oldestPending < 0) {
+                oldestPending = since;
+            }
+            batch.forEach(pending::putIfAbsent);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void pause() {
+        lock.lock();
+        try {
+            if (!closed) {
+                due.awaitNanos(intervalNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int pendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double lagSeconds() {
+        lock.lock();
+        try {
+            return pending.isEmpty() ? 0 : (System.nanoTime() - oldestPending) / 1e9;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import com.tecnocampus.examsimulation.api.domain.ProductionReport;
+import io.r2dbc.spi.Readable;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * The statements of {@link JdbcKingdomRepository} on a non-blocking R2DBC connection, for the
+ * reactive variant of the API. There is no cache or leaderboard in front of the table: the richest
+ * kingdoms are read through the gold index.
+ *
+ * Ids that are not UUIDs find nothing, as in {@link JdbcKingdomRepository}.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class R2dbcKingdomRepository {
+    // Read by position in toKingdom
+    private static final String COLUMNS = "id, gold, citizens, food, date_of_creation, version, last_settled";
+
+    private final DatabaseClient client;
+    private final KingdomIds ids;
+
+    public R2dbcKingdomRepository(DatabaseClient client, KingdomIds ids) {
+        this.client = client;
+        this.ids = ids;
+    }
+
+    public Mono<Kingdom> insert(Kingdom kingdom) {
+        UUID id = ids.next();
+        String sql = "INSERT INTO kingdoms (id, gold, citizens, food, date_of_creation, version, last_settled) "
+                + "VALUES (:id, :gold, :citizens, :food, :dateOfCreation, 0, :lastSettled)";
+        return client.sql(sql)
+                .bind("id", id)
+                .bind("gold", kingdom.getGold())
+                .bind("citizens", kingdom.getCitizens())
+                .bind("food", kingdom.getFood())
+                .bind("dateOfCreation", kingdom.getDateOfCreation())
+                .bind("lastSettled", kingdom.getLastSettled())
+                .fetch().rowsUpdated()
+                .then(Mono.fromSupplier(() -> {
+                    kingdom.setId(id.toString());
+                    kingdom.setVersion(0L);
+                    return kingdom;
+                }));
+    }
+
+    /**
+     * Writes the kingdom if it is still at its version, or fails with
+     * {@link OptimisticLockingFailureException}.
+     */
+    public Mono<Kingdom> update(Kingdom kingdom) {
+        String sql = "UPDATE kingdoms SET gold = :gold, citizens = :citizens, food = :food, last_settled = :lastSettled, "
+                + "version = version + 1 WHERE id = :id AND version = :version";
+        return client.sql(sql)
+                .bind("gold", kingdom.getGold())
+                .bind("citizens", kingdom.getCitizens())
+                .bind("food", kingdom.getFood())
+                .bind("lastSettled", kingdom.getLastSettled())
+                .bind("id", UUID.fromString(kingdom.getId()))
+                .bind("version", kingdom.getVersion())
+                .fetch().rowsUpdated()
+                .flatMap(updated -> {
+                    if (updated == 0) {
+                        return Mono.error(new OptimisticLockingFailureException(
+                                "Kingdom " + kingdom.getId() + " was modified concurrently"));
+                    }
+                    kingdom.setVersion(kingdom.getVersion() + 1);
+                    return Mono.just(kingdom);
+                });
+    }
+
+    public Mono<Kingdom> findById(String id) {
+        return queryOne("SELECT " + COLUMNS + " FROM kingdoms WHERE id = :id", id);
+    }
+
+    public Mono<Kingdom> findByIdForUpdate(String id) {
+        return queryOne("SELECT " + COLUMNS + " FROM kingdoms WHERE id = :id FOR UPDATE", id);
+    }
+
+    public Mono<Boolean> existsById(String id) {
+        return findById(id).hasElement();
+    }
+
+    /**
+     * Kingdoms after {@code after} in id order, emitted as they are read.
+     */
+    public Flux<Kingdom> findPage(String after, int limit) {
+        if (after == null) {
+            return client.sql("SELECT " + COLUMNS + " FROM kingdoms ORDER BY id LIMIT :limit")
+                    .bind("limit", limit)
+                    .map(R2dbcKingdomRepository::toKingdom)
+                    .all();
+        }
+        UUID uuid = uuid(after);
+        if (uuid == null) {
+            return Flux.empty();
+        }
+        return client.sql("SELECT " + COLUMNS + " FROM kingdoms WHERE id > :after ORDER BY id LIMIT :limit")
+                .bind("after", uuid)
+                .bind("limit", limit)
+                .map(R2dbcKingdomRepository::toKingdom)
+                .all();
+    }
+
+    /**
+     * Every kingdom in id order. Rows are read as the subscriber requests them, so a slow client
+     * holds back the query instead of filling memory.
+     */
+    public Flux<Kingdom> findAll() {
+        return client.sql("SELECT " + COLUMNS + " FROM kingdoms ORDER BY id")
+                .map(R2dbcKingdomRepository::toKingdom)
+                .all();
+    }
+
+    public Flux<Kingdom> findTop(int n) {
+        return client.sql("SELECT " + COLUMNS + " FROM kingdoms ORDER BY gold DESC, id LIMIT :n")
+                .bind("n", n)
+                .map(R2dbcKingdomRepository::toKingdom)
+                .all();
+    }
+
+    public Mono<Kingdom> findRichest() {
+        return findTop(1).next();
+    }
+
+    public Mono<Kingdom> investInFood(String id, int gold) {
+        return updateOne("UPDATE kingdoms SET gold = gold - :gold, food = food + 2 * :gold, version = version + 1 "
+                + "WHERE id = :id AND gold >= :gold", id, gold);
+    }
+
+    public Mono<Kingdom> investInCitizens(String id, int gold) {
+        return updateOne("UPDATE kingdoms SET gold = gold - :gold, citizens = citizens + :gold, version = version + 1 "
+                + "WHERE id = :id AND gold >= :gold", id, gold);
+    }
+
+    public Mono<Kingdom> produce(String id, LocalDate day) {
+        UUID uuid = uuid(id);
+        if (uuid == null) {
+            return Mono.empty();
+        }
+        String sql = "SELECT " + COLUMNS + " FROM FINAL TABLE (UPDATE kingdoms SET gold = gold + 2 * LEAST(citizens, food), "
+                + "citizens = LEAST(citizens, food), food = food - LEAST(citizens, food), last_settled = :day, "
+                + "version = version + 1 WHERE id = :id AND citizens > 0 AND food > 0)";
+        return client.sql(sql).bind("day", day).bind("id", uuid).map(R2dbcKingdomRepository::toKingdom).one();
+    }
+
+    public Mono<Boolean> deleteIfStarving(String id) {
+        UUID uuid = uuid(id);
+        if (uuid == null) {
+            return Mono.just(false);
+        }
+        return client.sql("DELETE FROM kingdoms WHERE id = :id AND (citizens = 0 OR food = 0)")
+                .bind("id", uuid)
+                .fetch().rowsUpdated()
+                .map(deleted -> deleted > 0);
+    }
+
+    /**
+     * The three set-based statements of {@link JdbcKingdomRepository#applyDailyProductionToAll(LocalDate)},
+     * to be run in one transaction.
+     */
+    public Mono<ProductionReport> applyDailyProductionToAll(LocalDate day) {
+        Mono<Long> deleted = client.sql("SELECT COUNT(*) FROM OLD TABLE (DELETE FROM kingdoms WHERE citizens = 0 OR food = 0)")
+                .map(row -> row.get(0, Long.class))
+                .one();
+        Mono<long[]> starving = client.sql("SELECT COUNT(*), COALESCE(SUM(2 * citizens), 0) FROM FINAL TABLE ("
+                        + "UPDATE kingdoms SET gold = gold + 2 * food, citizens = food, food = 0, last_settled = :day, "
+                        + "version = version + 1 WHERE food <= citizens)")
+                .bind("day", day)
+                .map(R2dbcKingdomRepository::toCounts)
+                .one();
+        Mono<long[]> fed = client.sql("SELECT COUNT(*), COALESCE(SUM(2 * citizens), 0) FROM FINAL TABLE ("
+                        + "UPDATE kingdoms SET gold = gold + 2 * citizens, food = food - citizens, last_settled = :day, "
+                        + "version = version + 1 WHERE food > citizens)")
+                .bind("day", day)
+                .map(R2dbcKingdomRepository::toCounts)
+                .one();
+        // In this order, as each statement relies on the rows the previous one changed
+        return deleted.flatMap(d -> starving.flatMap(s -> fed.map(f ->
+                new ProductionReport(d + s[0] + f[0], s[0], d, s[1] + f[1]))));
+    }
+
+    private Mono<Kingdom> queryOne(String sql, String id) {
+        UUID uuid = uuid(id);
+        if (uuid == null) {
+            return Mono.empty();
+        }
+        return client.sql(sql).bind("id", uuid).map(R2dbcKingdomRepository::toKingdom).one();
+    }
+
+    private Mono<Kingdom> updateOne(String update, String id, int gold) {
+        UUID uuid = uuid(id);
+        if (uuid == null) {
+            return Mono.empty();
+        }
+        return client.sql("SELECT " + COLUMNS + " FROM FINAL TABLE (" + update + ")")
+                .bind("gold", gold)
+                .bind("id", uuid)
+                .map(R2dbcKingdomRepository::toKingdom)
+                .one();
+    }
+
+    private static UUID uuid(String id) {
+        if (id == null || id.length() != 36) {
+            return null;
+        }
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long[] toCounts(Readable row) {
+        return new long[]{row.get(0, Number.class).longValue(), row.get(1, Number.class).longValue()};
+    }
+
+    private static Kingdom toKingdom(Readable row) {
+        Kingdom kingdom = new Kingdom();
+        kingdom.setId(row.get(0, UUID.class).toString());
+        kingdom.setGold(row.get(1, Integer.class));
+        kingdom.setCitizens(row.get(2, Integer.class));
+        kingdom.setFood(row.get(3, Integer.class));
+        kingdom.setDateOfCreation(row.get(4, LocalDate.class));
+        kingdom.setVersion(row.get(5, Long.class));
+        kingdom.setLastSettled(row.get(6, LocalDate.class));
+        return kingdom;
+    }
+}
@@ -0,0 +1,67 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.connection.init.ConnectionFactoryInitializer;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import java.time.Duration;
+
+/**
+ * Non-blocking access to the kingdoms table for the reactive variant of the API, started with
+ * {@code spring.main.web-application-type=reactive}: a pool of {@code kingdom.reactive.pool-size}
+ * R2DBC connections to {@code kingdom.reactive.url}, created with the schema of {@code schema.sql}.
+ *
+ * Neither the pool nor its transaction manager are beans. Spring Boot skips the DataSource when
+ * there is an R2DBC connection factory bean, and the rest of the application still needs it, and a
+ * second transaction manager bean would make {@code @Transactional} ambiguous. Spring Boot's own
+ * R2DBC configuration is excluded in application.properties for the same reasons.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveKingdomConfiguration implements DisposableBean {
+    private final ConnectionPool pool;
+
+    public ReactiveKingdomConfiguration(@Value("${kingdom.reactive.url}") String url,
+                                        @Value("${kingdom.reactive.pool-size:16}") int poolSize) {
+        // Fail fast like the Hikari pool instead of queueing requests for a connection
+        this.pool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(url))
+                .initialSize(poolSize)
+                .maxSize(poolSize)
+                .maxAcquireTime(Duration.ofSeconds(2))
+                .build());
+    }
+
+    @Bean
+    public ConnectionFactoryInitializer kingdomSchemaInitializer() {
+        ConnectionFactoryInitializer initializer = new ConnectionFactoryInitializer();
+        initializer.setConnectionFactory(pool);
+        initializer.setDatabasePopulator(new ResourceDatabasePopulator(new ClassPathResource("schema.sql")));
+        return initializer;
+    }
+
+    @Bean
+    public DatabaseClient kingdomDatabaseClient() {
+        return DatabaseClient.create(pool);
+    }
+
+    @Bean
+    public TransactionalOperator kingdomTransactions() {
+        return TransactionalOperator.create(new R2dbcTransactionManager(pool));
+    }
+
+    @Override
+    public void destroy() {
+        pool.dispose();
+    }
+}
@@ -0,0 +1,150 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import com.tecnocampus.examsimulation.api.domain.InvestmentType;
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import com.tecnocampus.examsimulation.api.domain.ProductionReport;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.LocalDate;
+import java.util.NoSuchElementException;
+
+/**
+ * The rules of {@link KingdomService} for the reactive variant of the API, on
+ * {@link R2dbcKingdomRepository}. Errors are signalled with the same exceptions, so the controller
+ * maps them to the same status codes.
+ *
+ * There are no in-process kingdom locks, which would block the event loop: concurrent changes to a
+ * kingdom are serialized by the row locks and conditional updates of the database alone. Daily
+ * production is always scheduled; lazy production and the cluster are only available on the
+ * servlet stack.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveKingdomService {
+    private static final int MAX_ATTACK_ATTEMPTS = 5;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final R2dbcKingdomRepository kingdomRepository;
+    private final TransactionalOperator transactions;
+    private final KingdomSettlement settlement;
+
+    public ReactiveKingdomService(R2dbcKingdomRepository kingdomRepository, TransactionalOperator transactions,
+                                  KingdomSettlement settlement) {
+        if (settlement.isLazy()) {
+            throw new IllegalStateException("kingdom.production.mode=lazy is not supported by the reactive API");
+        }
+        this.kingdomRepository = kingdomRepository;
+        this.transactions = transactions;
+        this.settlement = settlement;
+    }
+
+    /**
+     * Like {@link KingdomService#createKingdom(Kingdom)}, only the resources come from the request.
+     */
+    public Mono<Kingdom> createKingdom(Kingdom kingdom) {
+        kingdom.setId(null);
+        kingdom.setVersion(null);
+        kingdom.setLastSettled(settlement.today());
+        return kingdomRepository.insert(kingdom);
+    }
+
+    /**
+     * Runs one day of production.
+     *
+     * @throws IllegalStateException if the kingdom starved and was deleted
+     */
+    public Mono<Kingdom> startDailyProduction(String id) {
+        LocalDate today = settlement.today();
+        return kingdomRepository.produce(id, today)
+                .switchIfEmpty(Mono.defer(() -> kingdomRepository.deleteIfStarving(id).flatMap(deleted -> deleted
+                        ? Mono.error(new IllegalStateException("Kingdom has no citizens left and was deleted"))
+                        // Fed concurrently between both statements, try once more
+                        : kingdomRepository.produce(id, today))))
+                .switchIfEmpty(Mono.error(() -> new NoSuchElementException("Kingdom not found")));
+    }
+
+    public Mono<ProductionReport> startWorldProduction() {
+        return transactions.transactional(kingdomRepository.applyDailyProductionToAll(settlement.today()));
+    }
+
+    public Mono<Kingdom> invest(String id, String type, int gold) {
+        InvestmentType investment = InvestmentType.parse(type);
+        if (investment == null) {
+            return Mono.error(new IllegalArgumentException("Invalid investment type"));
+        }
+        Mono<Kingdom> invested = switch (investment) {
+            case FOOD -> kingdomRepository.investInFood(id, gold);
+            case CITIZENS -> kingdomRepository.investInCitizens(id, gold);
+        };
+        return invested.switchIfEmpty(Mono.defer(() -> kingdomRepository.existsById(id).flatMap(exists -> exists
+                ? Mono.error(new IllegalArgumentException("Not enough gold"))
+                : Mono.error(new NoSuchElementException("Kingdom not found")))));
+    }
+
+    public Mono<Kingdom> getKingdom(String id) {
+        return kingdomRepository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new NoSuchElementException("Kingdom not found")));
+    }
+
+    public Mono<Kingdom> getRichestKingdom() {
+        return kingdomRepository.findRichest()
+                .switchIfEmpty(Mono.error(() -> new NoSuchElementException("No kingdoms found")));
+    }
+
+    /**
+     * Checks {@code limit} before the query starts, so an invalid one is rejected before the
+     * response is committed.
+     */
+    public Flux<Kingdom> getKingdoms(String after, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return kingdomRepository.findPage(after, limit);
+    }
+
+    public Flux<Kingdom> exportKingdoms() {
+        return kingdomRepository.findAll();
+    }
+
+    public Flux<Kingdom> getTopKingdoms(int n) {
+        if (n < 1 || n > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("n must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return kingdomRepository.findTop(n);
+    }
+
+    /**
+     * Resolves an attack in its own transaction, locking both rows in id order as
+     * {@link KingdomService#attack(String, String)} does, and retries it a bounded number of times
+     * if a lock times out or a versioned write loses a race.
+     */
+    public Mono<Kingdom> attack(String attackerId, String targetId) {
+        if (attackerId.equals(targetId)) {
+            return Mono.error(new IllegalArgumentException("A kingdom cannot attack itself"));
+        }
+        return transactions.transactional(Mono.defer(() -> resolveAttack(attackerId, targetId)))
+                .retryWhen(Retry.max(MAX_ATTACK_ATTEMPTS - 1)
+                        .filter(ConcurrencyFailureException.class::isInstance)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    private Mono<Kingdom> resolveAttack(String attackerId, String targetId) {
+        Mono<Kingdom> attacker = kingdomRepository.findByIdForUpdate(attackerId)
+                .switchIfEmpty(Mono.error(() -> new NoSuchElementException("Attacker kingdom not found")));
+        Mono<Kingdom> target = kingdomRepository.findByIdForUpdate(targetId)
+                .switchIfEmpty(Mono.error(() -> new NoSuchElementException("Target kingdom not found")));
+        Mono<Kingdom[]> both = attackerId.compareTo(targetId) < 0
+                ? attacker.flatMap(a -> target.map(t -> new Kingdom[]{a, t}))
+                : target.flatMap(t -> attacker.map(a -> new Kingdom[]{a, t}));
+        return both.flatMap(kingdoms -> {
+            KingdomService.fight(kingdoms[0], kingdoms[1]);
+            return kingdomRepository.update(kingdoms[0]).then(kingdomRepository.update(kingdoms[1])).thenReturn(kingdoms[0]);
+        });
+    }
+}
@@ -0,0 +1,87 @@
+package com.tecnocampus.examsimulation.api.application;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the methods of classes annotated with {@code @Timed}, with the same timers as Micrometer's
+ * {@code TimedAspect}: tagged with the class, the method and the exception thrown, or {@code none}.
+ *
+ * {@code TimedAspect} builds the tags and looks the timer up in the registry on every call, which
+ * is most of the garbage of a request served from the cache. Here each method looks its timers up
+ * once, so a call only reads the clock twice.
+ */
+public class TimedMethodInterceptor implements MethodInterceptor {
+    private static final String DEFAULT_NAME = "method.timed";
+    private static final String NO_EXCEPTION = "none";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Method, MethodTimers> timers = new ConcurrentHashMap<>();
+
+    public TimedMethodInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        MethodTimers methodTimers = timers.get(invocation.getMethod());
+        if (methodTimers == null) {
+            methodTimers = timers.computeIfAbsent(invocation.getMethod(), method -> new MethodTimers(invocation));
+        }
+        long start = System.nanoTime();
+        try {
+            Object result = invocation.proceed();
+            methodTimers.success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable e) {
+            methodTimers.failure(e.getClass()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private class MethodTimers {
+        private final Timed timed;
+        private final String className;
+        private final String methodName;
+        private final Timer success;
+        private final Map<Class<?>, Timer> failures = new ConcurrentHashMap<>();
+
+        MethodTimers(MethodInvocation invocation) {
+            Method method = invocation.getMethod();
+            Timed annotation = AnnotatedElementUtils.findMergedAnnotation(method, Timed.class);
+            if (annotation == null && invocation.getThis() != null) {
+                annotation = AnnotatedElementUtils.findMergedAnnotation(AopUtils.getTargetClass(invocation.getThis()),
+                        Timed.class);
+            }
+            this.timed = annotation;
+            this.className = method.getDeclaringClass().getName();
+            this.methodName = method.getName();
+            this.success = timer(NO_EXCEPTION);
+        }
+
+        Timer failure(Class<?> exception) {
+            Timer timer = failures.get(exception);
+            return timer != null ? timer : failures.computeIfAbsent(exception, e -> timer(e.getSimpleName()));
+        }
+
+        private Timer timer(String exception) {
+            return Timer.builder(timed.value().isEmpty() ? DEFAULT_NAME : timed.value())
+                    .description(timed.description().isEmpty() ? null : timed.description())
+                    .tags(timed.extraTags())
+                    .tags("class", className, "method", methodName, "exception", exception)
+                    .publishPercentileHistogram(timed.histogram())
+                    .publishPercentiles(timed.percentiles().length == 0 ? null : timed.percentiles())
+                    .register(meterRegistry);
+        }
+    }
+}
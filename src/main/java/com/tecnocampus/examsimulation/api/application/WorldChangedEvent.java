@@ -0,0 +1,8 @@
+package com.tecnocampus.examsimulation.api.application;
+
+/**
+ * Published by {@link KingdomService} after an operation that may have changed every kingdom,
+ * such as world production or a simulation, instead of one {@link KingdomChangedEvent} per kingdom.
+ */
+public record WorldChangedEvent() {
+}
@@ -0,0 +1,50 @@
+package com.tecnocampus.examsimulation.api.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchReport {
+    private int created;
+    private int failed;
+    // Ids of the kingdoms created, in the order they appear in the batch
+    private List<String> ids = new ArrayList<>();
+    private List<Failure> failures = new ArrayList<>();
+
+    public void addCreated(String id) {
+        created++;
+        ids.add(id);
+    }
+
+    public void addFailure(int index, String error) {
+        failed++;
+        failures.add(new Failure(index, error));
+    }
+
+    // Getters and Setters
+    public int getCreated() { return created; }
+    public void setCreated(int created) { this.created = created; }
+    public int getFailed() { return failed; }
+    public void setFailed(int failed) { this.failed = failed; }
+    public List<String> getIds() { return ids; }
+    public void setIds(List<String> ids) { this.ids = ids; }
+    public List<Failure> getFailures() { return failures; }
+    public void setFailures(List<Failure> failures) { this.failures = failures; }
+
+    public static class Failure {
+        private int index;
+        private String error;
+
+        public Failure() {
+        }
+
+        public Failure(int index, String error) {
+            this.index = index;
+            this.error = error;
+        }
+
+        public int getIndex() { return index; }
+        public void setIndex(int index) { this.index = index; }
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+    }
+}
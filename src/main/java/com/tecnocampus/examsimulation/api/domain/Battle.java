@@ -0,0 +1,24 @@
+package com.tecnocampus.examsimulation.api.domain;
+
+import jakarta.validation.constraints.NotNull;
+
+public class Battle {
+    @NotNull
+    private String attackerId;
+    @NotNull
+    private String targetId;
+
+    public Battle() {
+    }
+
+    public Battle(String attackerId, String targetId) {
+        this.attackerId = attackerId;
+        this.targetId = targetId;
+    }
+
+    // Getters and Setters
+    public String getAttackerId() { return attackerId; }
+    public void setAttackerId(String attackerId) { this.attackerId = attackerId; }
+    public String getTargetId() { return targetId; }
+    public void setTargetId(String targetId) { this.targetId = targetId; }
+}
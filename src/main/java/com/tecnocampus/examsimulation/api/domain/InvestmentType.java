@@ -0,0 +1,20 @@
+package com.tecnocampus.examsimulation.api.domain;
+
+public enum InvestmentType {
+    FOOD,
+    CITIZENS;
+
+    /**
+     * The type named {@code type} in any case, or null if there is none. Compares in place instead
+     * of lower-casing a copy of the name.
+     */
+    public static InvestmentType parse(String type) {
+        if (FOOD.name().equalsIgnoreCase(type)) {
+            return FOOD;
+        }
+        if (CITIZENS.name().equalsIgnoreCase(type)) {
+            return CITIZENS;
+        }
+        return null;
+    }
+}
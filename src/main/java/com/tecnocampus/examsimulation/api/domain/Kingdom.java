@@ -1,52 +1,120 @@
 package com.tecnocampus.examsimulation.api.domain;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.annotation.Nulls;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import java.time.LocalDate;
 
+/**
+ * Resources are primitive so reading and changing them does not box. Requests must still give all
+ * three: Jackson creates kingdoms through the constructor that requires them and rejects nulls.
+ */
 public class Kingdom {
     private String id;
 
-    @NotNull
     @Min(0)
     @Max(60)
-    private Integer gold;
+    private int gold;
 
-    @NotNull
     @Min(0)
     @Max(60)
-    private Integer citizens;
+    private int citizens;
 
-    @NotNull
     @Min(0)
     @Max(60)
-    private Integer food;
+    private int food;
 
     private LocalDate dateOfCreation;
 
+    // Day up to which daily production has been applied, when it is applied lazily
+    private LocalDate lastSettled;
+
+    private Long version;
+
     public Kingdom() {
         this.dateOfCreation = LocalDate.now();
+        this.lastSettled = this.dateOfCreation;
     }
 
-    public Kingdom(Integer gold, Integer citizens, Integer food) {
+    @JsonCreator
+    public Kingdom(@JsonProperty(value = "gold", required = true) @JsonSetter(nulls = Nulls.FAIL) int gold,
+                   @JsonProperty(value = "citizens", required = true) @JsonSetter(nulls = Nulls.FAIL) int citizens,
+                   @JsonProperty(value = "food", required = true) @JsonSetter(nulls = Nulls.FAIL) int food) {
         this();
         this.gold = gold;
         this.citizens = citizens;
         this.food = food;
     }
 
+    /**
+     * A stored kingdom, without reading the clock for dates that are then replaced.
+     */
+    public Kingdom(String id, int gold, int citizens, int food, LocalDate dateOfCreation, LocalDate lastSettled,
+                   Long version) {
+        this.id = id;
+        this.gold = gold;
+        this.citizens = citizens;
+        this.food = food;
+        this.dateOfCreation = dateOfCreation;
+        this.lastSettled = lastSettled;
+        this.version = version;
+    }
+
+    public Kingdom(Kingdom other) {
+        this.id = other.id;
+        this.gold = other.gold;
+        this.citizens = other.citizens;
+        this.food = other.food;
+        this.dateOfCreation = other.dateOfCreation;
+        this.lastSettled = other.lastSettled;
+        this.version = other.version;
+    }
+
     // Getters and Setters
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
-    public Integer getGold() { return gold; }
-    public void setGold(Integer gold) { this.gold = gold; }
-    public Integer getCitizens() { return citizens; }
-    public void setCitizens(Integer citizens) { this.citizens = citizens; }
-    public Integer getFood() { return food; }
-    public void setFood(Integer food) { this.food = food; }
+    public int getGold() { return gold; }
+    public void setGold(int gold) { this.gold = gold; }
+    public int getCitizens() { return citizens; }
+    public void setCitizens(int citizens) { this.citizens = citizens; }
+    public int getFood() { return food; }
+    public void setFood(int food) { this.food = food; }
     public LocalDate getDateOfCreation() { return dateOfCreation; }
     public void setDateOfCreation(LocalDate dateOfCreation) { this.dateOfCreation = dateOfCreation; }
+    public LocalDate getLastSettled() { return lastSettled; }
+    public void setLastSettled(LocalDate lastSettled) { this.lastSettled = lastSettled; }
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+
+    /**
+     * Gold and citizens a kingdom is left with after a battle resolved by another node, applied if
+     * the kingdom is still at {@code version}.
+     */
+    public static class BattleResult {
+        private int gold;
+        private int citizens;
+        private long version;
+
+        public BattleResult() {
+        }
+
+        public BattleResult(int gold, int citizens, long version) {
+            this.gold = gold;
+            this.citizens = citizens;
+            this.version = version;
+        }
+
+        public int getGold() { return gold; }
+        public void setGold(int gold) { this.gold = gold; }
+        public int getCitizens() { return citizens; }
+        public void setCitizens(int citizens) { this.citizens = citizens; }
+        public long getVersion() { return version; }
+        public void setVersion(long version) { this.version = version; }
+    }
 
     public static class InvestRequest {
         @NotNull @Min(0)
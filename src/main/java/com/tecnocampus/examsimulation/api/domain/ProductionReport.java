@@ -0,0 +1,28 @@
+package com.tecnocampus.examsimulation.api.domain;
+
+public class ProductionReport {
+    private long processed;
+    private long starved;
+    private long deleted;
+    private long goldMinted;
+
+    public ProductionReport() {
+    }
+
+    public ProductionReport(long processed, long starved, long deleted, long goldMinted) {
+        this.processed = processed;
+        this.starved = starved;
+        this.deleted = deleted;
+        this.goldMinted = goldMinted;
+    }
+
+    // Getters and Setters
+    public long getProcessed() { return processed; }
+    public void setProcessed(long processed) { this.processed = processed; }
+    public long getStarved() { return starved; }
+    public void setStarved(long starved) { this.starved = starved; }
+    public long getDeleted() { return deleted; }
+    public void setDeleted(long deleted) { this.deleted = deleted; }
+    public long getGoldMinted() { return goldMinted; }
+    public void setGoldMinted(long goldMinted) { this.goldMinted = goldMinted; }
+}
@@ -0,0 +1,43 @@
+package com.tecnocampus.examsimulation.api.domain;
+
+import java.util.List;
+
+public class SimulationReport {
+    private int days;
+    private boolean dryRun;
+    private long processed;
+    private long survivors;
+    private long deleted;
+    private long goldMinted;
+    private List<Kingdom> kingdoms;
+
+    public SimulationReport() {
+    }
+
+    public SimulationReport(int days, boolean dryRun, long processed, long survivors, long deleted, long goldMinted,
+                            List<Kingdom> kingdoms) {
+        this.days = days;
+        this.dryRun = dryRun;
+        this.processed = processed;
+        this.survivors = survivors;
+        this.deleted = deleted;
+        this.goldMinted = goldMinted;
+        this.kingdoms = kingdoms;
+    }
+
+    // Getters and Setters
+    public int getDays() { return days; }
+    public void setDays(int days) { this.days = days; }
+    public boolean isDryRun() { return dryRun; }
+    public void setDryRun(boolean dryRun) { this.dryRun = dryRun; }
+    public long getProcessed() { return processed; }
+    public void setProcessed(long processed) { this.processed = processed; }
+    public long getSurvivors() { return survivors; }
+    public void setSurvivors(long survivors) { this.survivors = survivors; }
+    public long getDeleted() { return deleted; }
+    public void setDeleted(long deleted) { this.deleted = deleted; }
+    public long getGoldMinted() { return goldMinted; }
+    public void setGoldMinted(long goldMinted) { this.goldMinted = goldMinted; }
+    public List<Kingdom> getKingdoms() { return kingdoms; }
+    public void setKingdoms(List<Kingdom> kingdoms) { this.kingdoms = kingdoms; }
+}
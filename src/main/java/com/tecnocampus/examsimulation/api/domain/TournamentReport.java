@@ -0,0 +1,53 @@
+package com.tecnocampus.examsimulation.api.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TournamentReport {
+    private int resolved;
+    private int failed;
+    private double battlesPerSecond;
+    private List<Outcome> outcomes = new ArrayList<>();
+
+    public void addWin(int index, String winnerId) {
+        resolved++;
+        outcomes.add(new Outcome(index, winnerId, null));
+    }
+
+    public void addFailure(int index, String error) {
+        failed++;
+        outcomes.add(new Outcome(index, null, error));
+    }
+
+    // Getters and Setters
+    public int getResolved() { return resolved; }
+    public void setResolved(int resolved) { this.resolved = resolved; }
+    public int getFailed() { return failed; }
+    public void setFailed(int failed) { this.failed = failed; }
+    public double getBattlesPerSecond() { return battlesPerSecond; }
+    public void setBattlesPerSecond(double battlesPerSecond) { this.battlesPerSecond = battlesPerSecond; }
+    public List<Outcome> getOutcomes() { return outcomes; }
+    public void setOutcomes(List<Outcome> outcomes) { this.outcomes = outcomes; }
+
+    public static class Outcome {
+        private int index;
+        private String winnerId;
+        private String error;
+
+        public Outcome() {
+        }
+
+        public Outcome(int index, String winnerId, String error) {
+            this.index = index;
+            this.winnerId = winnerId;
+            this.error = error;
+        }
+
+        public int getIndex() { return index; }
+        public void setIndex(int index) { this.index = index; }
+        public String getWinnerId() { return winnerId; }
+        public void setWinnerId(String winnerId) { this.winnerId = winnerId; }
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+    }
+}
@@ -0,0 +1,20 @@
+-- Native 16-byte UUID keys instead of 36-character strings: smaller rows and index entries,
+-- and cheaper comparisons on every lookup
+CREATE TABLE IF NOT EXISTS kingdoms (
+    id UUID PRIMARY KEY,
+    gold INT NOT NULL,
+    citizens INT NOT NULL,
+    food INT NOT NULL,
+    date_of_creation DATE NOT NULL,
+    version BIGINT DEFAULT 0 NOT NULL,
+    last_settled DATE DEFAULT CURRENT_DATE NOT NULL
+);
+
+-- Tables created before lazy production: their kingdoms start settling from the day of the upgrade
+ALTER TABLE kingdoms ADD COLUMN IF NOT EXISTS last_settled DATE DEFAULT CURRENT_DATE NOT NULL;
+
+-- Richest kingdoms first, ties by id: top-N queries read the first n entries instead of sorting the table
+CREATE INDEX IF NOT EXISTS kingdoms_gold_idx ON kingdoms (gold DESC, id);
+
+-- Lazy world production looks up the kingdoms settled before today instead of reading them all
+CREATE INDEX IF NOT EXISTS kingdoms_last_settled_idx ON kingdoms (last_settled);
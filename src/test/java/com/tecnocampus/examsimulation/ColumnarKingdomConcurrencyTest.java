@@ -0,0 +1,10 @@
+package com.tecnocampus.examsimulation;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs {@link KingdomConcurrencyTest} against the in-memory columnar storage.
+ */
+@TestPropertySource(properties = "kingdom.storage=columnar")
+public class ColumnarKingdomConcurrencyTest extends KingdomConcurrencyTest {
+}
@@ -0,0 +1,99 @@
+package com.tecnocampus.examsimulation;
+
+import com.tecnocampus.examsimulation.api.application.KingdomRepository;
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs {@link KingdomTest} against the in-memory columnar storage.
+ */
+@TestPropertySource(properties = "kingdom.storage=columnar")
+public class ColumnarKingdomTest extends KingdomTest {
+
+    @Autowired
+    private KingdomRepository kingdomRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testRolledBackChangesAreDiscarded() {
+        Kingdom kingdom = kingdomRepository.save(new Kingdom(20, 5, 5));
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            Kingdom locked = kingdomRepository.findByIdForUpdate(kingdom.getId()).orElseThrow();
+            locked.setGold(60);
+            kingdomRepository.save(locked);
+            Kingdom created = kingdomRepository.save(new Kingdom(1, 1, 1));
+            assertEquals(60, kingdomRepository.findById(kingdom.getId()).orElseThrow().getGold());
+            assertTrue(kingdomRepository.existsById(created.getId()));
+            status.setRollbackOnly();
+        });
+
+        Kingdom after = kingdomRepository.findById(kingdom.getId()).orElseThrow();
+        assertEquals(20, after.getGold());
+        assertEquals(0L, after.getVersion());
+        assertFalse(kingdomRepository.findTop(100).stream()
+                .anyMatch(k -> k.getId().equals(kingdom.getId()) && k.getGold() == 60));
+    }
+
+    @Test
+    public void testPagesAndTopFollowTheOrderIndexes() {
+        Random random = new Random(42);
+        List<Kingdom> created = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            created.add(new Kingdom(random.nextInt(61), 10, 10));
+        }
+        kingdomRepository.insertAll(created);
+        Set<String> deleted = new HashSet<>();
+        for (int i = 0; i < created.size(); i += 3) {
+            kingdomRepository.delete(created.get(i).getId());
+            deleted.add(created.get(i).getId());
+        }
+        for (int i = 1; i < created.size(); i += 7) {
+            kingdomRepository.investInFood(created.get(i).getId(), random.nextInt(10));
+        }
+
+        Set<String> paged = new HashSet<>();
+        String after = null;
+        for (List<Kingdom> page = kingdomRepository.findPage(null, 100); !page.isEmpty();
+                page = kingdomRepository.findPage(after, 100)) {
+            for (Kingdom kingdom : page) {
+                if (after != null) {
+                    assertTrue(kingdom.getId().compareTo(after) > 0);
+                }
+                after = kingdom.getId();
+                assertTrue(paged.add(kingdom.getId()));
+            }
+        }
+        for (Kingdom kingdom : created) {
+            assertEquals(!deleted.contains(kingdom.getId()), paged.contains(kingdom.getId()));
+        }
+
+        List<Kingdom> top = kingdomRepository.findTop(paged.size());
+        assertEquals(paged.size(), top.size());
+        for (int i = 1; i < top.size(); i++) {
+            Kingdom previous = top.get(i - 1);
+            Kingdom kingdom = top.get(i);
+            assertTrue(previous.getGold() > kingdom.getGold()
+                    || (previous.getGold() == kingdom.getGold() && previous.getId().compareTo(kingdom.getId()) < 0));
+            assertEquals(kingdomRepository.findById(kingdom.getId()).orElseThrow().getGold(), kingdom.getGold());
+        }
+        assertEquals(top.get(0).getId(), kingdomRepository.findRichest().orElseThrow().getId());
+    }
+}
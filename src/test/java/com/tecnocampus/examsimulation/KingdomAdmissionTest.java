@@ -0,0 +1,122 @@
+package com.tecnocampus.examsimulation;
+
+import com.jayway.jsonpath.JsonPath;
+import com.tecnocampus.examsimulation.api.LoadShedder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Buckets refill too slowly to gain a token during a test, so every request over the burst is limited.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:admission;DB_CLOSE_DELAY=-1",
+        "kingdom.rate-limit.enabled=true",
+        "kingdom.rate-limit.client-header=X-Client-Id",
+        "kingdom.rate-limit.client.rate=0.001",
+        "kingdom.rate-limit.client.burst=2",
+        "kingdom.rate-limit.kingdom.rate=0.001",
+        "kingdom.rate-limit.kingdom.burst=3"
+})
+public class KingdomAdmissionTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testClientOverBurstIsLimited() throws Exception {
+        String first = create();
+        String second = create();
+
+        invest(first, "client-a").andExpect(status().isOk());
+        invest(second, "client-a").andExpect(status().isOk());
+        invest(second, "client-a")
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1000"));
+
+        // Other clients and reads are not limited
+        invest(second, "client-b").andExpect(status().isOk());
+        mockMvc.perform(get("/kingdoms/" + second).header("X-Client-Id", "client-a"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testKingdomOverBurstIsLimited() throws Exception {
+        String target = create();
+
+        invest(target, "client-c").andExpect(status().isOk());
+        invest(target, "client-d").andExpect(status().isOk());
+        mockMvc.perform(post("/kingdoms/" + create() + "/attack/" + target).header("X-Client-Id", "client-e"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/kingdoms/" + create() + "/attack/" + target).header("X-Client-Id", "client-f"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    public void testLoadShedderFollowsRepositoryLatency() throws InterruptedException {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        Timer repository = registry.timer("kingdom.repository", "method", "findById");
+        LoadShedder shedder = new LoadShedder(registry, Duration.ofMillis(20), Duration.ofMillis(1), 2, 8);
+
+        assertTrue(shedder.tryAcquire());
+        assertEquals(8, shedder.limit());
+
+        // Slow calls lower the limit by a quarter at a time down to its minimum
+        for (int i = 0; i < 10; i++) {
+            repository.record(Duration.ofMillis(100));
+            Thread.sleep(2);
+            assertTrue(shedder.tryAcquire());
+            shedder.release();
+        }
+        assertEquals(2, shedder.limit());
+        assertTrue(shedder.tryAcquire());
+        assertFalse(shedder.tryAcquire());
+        shedder.release();
+        shedder.release();
+
+        // Fast calls raise it again one at a time
+        repository.record(Duration.ofMillis(1));
+        Thread.sleep(2);
+        assertTrue(shedder.tryAcquire());
+        shedder.release();
+        assertEquals(3, shedder.limit());
+    }
+
+    private ResultActions invest(String id, String client) throws Exception {
+        return mockMvc.perform(post("/kingdoms/" + id + "/invest?type=citizens")
+                .header("X-Client-Id", client)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"gold\":1}"));
+    }
+
+    private String create() throws Exception {
+        String body = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":50,\"citizens\":20,\"food\":20}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(body, "$.id");
+    }
+}
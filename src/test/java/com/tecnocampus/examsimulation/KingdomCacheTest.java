@@ -0,0 +1,137 @@
+package com.tecnocampus.examsimulation;
+
+import com.tecnocampus.examsimulation.api.application.KingdomCache;
+import com.tecnocampus.examsimulation.api.application.KingdomRepository;
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class KingdomCacheTest {
+
+    @Autowired
+    private KingdomRepository kingdomRepository;
+
+    @Autowired
+    private KingdomCache cache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testRolledBackWritesAreNotCached() {
+        Kingdom kingdom = kingdomRepository.save(new Kingdom(20, 5, 5));
+        // Cached by the first read
+        assertEquals(20, kingdomRepository.findById(kingdom.getId()).orElseThrow().getGold());
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        String[] created = new String[1];
+        transaction.executeWithoutResult(status -> {
+            Kingdom locked = kingdomRepository.findByIdForUpdate(kingdom.getId()).orElseThrow();
+            locked.setGold(60);
+            kingdomRepository.save(locked);
+            created[0] = kingdomRepository.save(new Kingdom(1, 1, 1)).getId();
+            status.setRollbackOnly();
+        });
+
+        Kingdom after = kingdomRepository.findById(kingdom.getId()).orElseThrow();
+        assertEquals(20, after.getGold());
+        assertEquals(0L, after.getVersion());
+        assertTrue(kingdomRepository.findById(created[0]).isEmpty());
+        assertNull(cache.get(created[0]));
+    }
+
+    @Test
+    public void testDeleteDuringReadIsNotCachedBack() {
+        Kingdom kingdom = kingdomRepository.save(new Kingdom(20, 5, 5));
+
+        // A reader that loaded the row, and is about to cache it, when the delete commits
+        long stamp = cache.stamp(kingdom.getId());
+        Kingdom loaded = kingdomRepository.findById(kingdom.getId()).orElseThrow();
+        kingdomRepository.delete(kingdom.getId());
+        cache.fill(loaded, stamp);
+
+        assertNull(cache.get(kingdom.getId()));
+        assertTrue(kingdomRepository.findById(kingdom.getId()).isEmpty());
+    }
+
+    @Test
+    public void testFillAfterWriteIsDropped() {
+        KingdomCache cache = new KingdomCache(100);
+        Kingdom old = kingdom(10, 0);
+
+        long stamp = cache.stamp(old.getId());
+        cache.publish(kingdom(old.getId(), 30, 1), cache.epoch());
+        cache.fill(old, stamp);
+        assertEquals(30, cache.get(old.getId()).getGold());
+
+        Kingdom other = kingdom(10, 0);
+        stamp = cache.stamp(other.getId());
+        cache.invalidate(other.getId());
+        cache.fill(other, stamp);
+        assertNull(cache.get(other.getId()));
+
+        // Loaded before the whole table was rewritten
+        Kingdom flushed = kingdom(10, 0);
+        long epoch = cache.epoch();
+        cache.invalidateAll();
+        cache.publish(flushed, epoch);
+        assertNull(cache.get(flushed.getId()));
+    }
+
+    @Test
+    public void testOlderVersionsDoNotReplaceNewerOnes() {
+        KingdomCache cache = new KingdomCache(100);
+        Kingdom kingdom = kingdom(10, 0);
+
+        cache.publish(kingdom(kingdom.getId(), 30, 2), cache.epoch());
+        cache.publish(kingdom(kingdom.getId(), 20, 1), cache.epoch());
+        assertEquals(30, cache.get(kingdom.getId()).getGold());
+
+        cache.markDeleted(kingdom.getId());
+        cache.publish(kingdom(kingdom.getId(), 40, 3), cache.epoch());
+        cache.fill(kingdom(kingdom.getId(), 40, 3), cache.stamp(kingdom.getId()));
+        assertNull(cache.get(kingdom.getId()));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedAndCounts() {
+        KingdomCache cache = new KingdomCache(64);
+        Kingdom hot = kingdom(10, 0);
+        cache.fill(hot, cache.stamp(hot.getId()));
+
+        for (int i = 0; i < 1000; i++) {
+            Kingdom kingdom = kingdom(i % 60, 0);
+            cache.fill(kingdom, cache.stamp(kingdom.getId()));
+            assertNotNull(cache.get(hot.getId()));
+        }
+
+        assertTrue(cache.size() <= 64);
+        assertEquals(1001 - cache.size(), cache.getEvictions());
+        assertEquals(1000, cache.getHits());
+        assertEquals(0, cache.getMisses());
+
+        assertNull(cache.get(UUID.randomUUID().toString()));
+        assertEquals(1, cache.getMisses());
+    }
+
+    private static Kingdom kingdom(int gold, long version) {
+        return kingdom(UUID.randomUUID().toString(), gold, version);
+    }
+
+    private static Kingdom kingdom(String id, int gold, long version) {
+        LocalDate today = LocalDate.now();
+        return new Kingdom(id, gold, 5, 5, today, today, version);
+    }
+}
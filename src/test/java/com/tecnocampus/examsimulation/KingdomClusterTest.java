@@ -0,0 +1,208 @@
+package com.tecnocampus.examsimulation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tecnocampus.examsimulation.api.application.KingdomRing;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KingdomClusterTest {
+    private static final int NODES = 3;
+    private static final String TOKEN = "cluster-test";
+
+    private static final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+    private static final List<String> nodes = new ArrayList<>();
+    private static final HttpClient client = HttpClient.newHttpClient();
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeAll
+    public static void startCluster() throws IOException {
+        for (int i = 0; i < NODES; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                nodes.add("http://localhost:" + socket.getLocalPort());
+            }
+        }
+        for (int i = 0; i < NODES; i++) {
+            String self = nodes.get(i);
+            // Arguments rather than default properties, which application.properties overrides
+            contexts.add(new SpringApplicationBuilder(ExamSimulationApplication.class)
+                    .run("--server.port=" + URI.create(self).getPort(),
+                            "--spring.datasource.url=jdbc:h2:mem:cluster-" + i + ";DB_CLOSE_DELAY=-1",
+                            "--kingdom.cluster.enabled=true",
+                            "--kingdom.cluster.nodes=" + String.join(",", nodes),
+                            "--kingdom.cluster.self=" + self,
+                            "--kingdom.cluster.token=" + TOKEN,
+                            "--spring.threads.virtual.enabled=true",
+                            "--logging.level.root=WARN"));
+        }
+    }
+
+    @AfterAll
+    public static void stopCluster() {
+        contexts.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    public void testKingdomsAreCreatedOnTheNodeThatOwnsThem() throws Exception {
+        KingdomRing ring = new KingdomRing(nodes, nodes.get(0), 128, TOKEN);
+        for (int i = 0; i < NODES; i++) {
+            for (int k = 0; k < 5; k++) {
+                String id = create(i, 10, 10, 10).get("id").asText();
+                assertEquals(nodes.get(i), ring.owner(id));
+            }
+        }
+    }
+
+    @Test
+    public void testRequestsAreForwardedToTheOwner() throws Exception {
+        String id = create(1, 30, 4, 10).get("id").asText();
+
+        HttpResponse<String> found = send(2, "GET", "/kingdoms/" + id, null);
+        assertEquals(200, found.statusCode());
+        assertEquals(30, objectMapper.readTree(found.body()).get("gold").asInt());
+
+        HttpResponse<String> invested = send(0, "POST", "/kingdoms/" + id + "/invest?type=food", "{\"gold\":5}");
+        assertEquals(200, invested.statusCode());
+        assertEquals(25, objectMapper.readTree(invested.body()).get("gold").asInt());
+        assertEquals(20, objectMapper.readTree(send(1, "GET", "/kingdoms/" + id, null).body()).get("food").asInt());
+
+        assertEquals(404, send(2, "GET", "/kingdoms/00000000-0000-0000-0000-000000000000", null).statusCode());
+    }
+
+    @Test
+    public void testAttackAcrossNodes() throws Exception {
+        String attacker = create(0, 10, 20, 10).get("id").asText();
+        String target = create(1, 25, 4, 10).get("id").asText();
+
+        HttpResponse<String> attacked = send(2, "POST", "/kingdoms/" + attacker + "/attack/" + target, null);
+        assertEquals(200, attacked.statusCode());
+        JsonNode winner = objectMapper.readTree(attacked.body());
+        assertEquals(35, winner.get("gold").asInt());
+        assertEquals(22, winner.get("citizens").asInt());
+
+        JsonNode loser = objectMapper.readTree(send(0, "GET", "/kingdoms/" + target, null).body());
+        assertEquals(0, loser.get("gold").asInt());
+        assertEquals(2, loser.get("citizens").asInt());
+    }
+
+    @Test
+    public void testBattleResultsNeedTheClusterToken() throws Exception {
+        String id = create(1, 25, 4, 10).get("id").asText();
+
+        HttpResponse<String> rejected = send(1, "POST", "/kingdoms/" + id + "/battle",
+                "{\"gold\":60,\"citizens\":60,\"version\":0}");
+        assertEquals(404, rejected.statusCode());
+        assertEquals(25, objectMapper.readTree(send(1, "GET", "/kingdoms/" + id, null).body()).get("gold").asInt());
+    }
+
+    @Test
+    public void testClusterNeedsAToken() {
+        assertThrows(IllegalArgumentException.class, () -> new KingdomRing(nodes, nodes.get(0), 128, ""));
+        assertThrows(IllegalArgumentException.class, () -> new KingdomRing(nodes, nodes.get(0), 128, " "));
+
+        KingdomRing ring = new KingdomRing(nodes, nodes.get(0), 128, TOKEN);
+        assertTrue(ring.isPeer(TOKEN));
+        assertFalse(ring.isPeer(""));
+        assertFalse(ring.isPeer(null));
+        assertFalse(ring.isPeer(TOKEN + "x"));
+    }
+
+    @Test
+    public void testEmptyTokenHeaderIsNotAPeer() throws Exception {
+        String id = create(1, 25, 4, 10).get("id").asText();
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(nodes.get(1) + "/kingdoms/" + id + "/battle"))
+                .header("Content-Type", "application/json")
+                .header(KingdomRing.TOKEN_HEADER, "")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"gold\":60,\"citizens\":60,\"version\":0}"))
+                .build();
+        assertEquals(404, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(25, objectMapper.readTree(send(1, "GET", "/kingdoms/" + id, null).body()).get("gold").asInt());
+    }
+
+    @Test
+    public void testRequestsAboutEveryKingdomCoverTheWholeCluster() throws Exception {
+        // Richer than the kingdoms of the other tests, which never reach 50 gold
+        List<String> rich = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            rich.add(create(i, 50 + i, 10, 10).get("id").asText());
+        }
+        String richest = create(NODES - 1, 60, 10, 10).get("id").asText();
+
+        JsonNode found = objectMapper.readTree(send(0, "GET", "/kingdoms/richest", null).body());
+        assertEquals(richest, found.get("id").asText());
+        assertEquals(List.of(richest, rich.get(2), rich.get(1), rich.get(0)),
+                ids(objectMapper.readTree(send(1, "GET", "/kingdoms/top?n=4", null).body())));
+
+        List<String> listed = ids(objectMapper.readTree(send(0, "GET", "/kingdoms?limit=1000", null).body()));
+        assertTrue(listed.containsAll(rich) && listed.contains(richest));
+        assertEquals(listed.stream().sorted().toList(), listed);
+        assertEquals(listed.subList(1, 3),
+                ids(objectMapper.readTree(send(2, "GET", "/kingdoms?limit=2&after=" + listed.get(0), null).body())));
+
+        List<String> exported = send(1, "GET", "/kingdoms/export", null).body().lines()
+                .map(KingdomClusterTest::readId)
+                .sorted()
+                .toList();
+        assertEquals(listed, exported);
+
+        // Asked by another node, a node only answers for its own kingdoms
+        HttpRequest fromPeer = HttpRequest.newBuilder(URI.create(nodes.get(0) + "/kingdoms/richest"))
+                .header(KingdomRing.TOKEN_HEADER, TOKEN)
+                .build();
+        JsonNode local = objectMapper.readTree(client.send(fromPeer, HttpResponse.BodyHandlers.ofString()).body());
+        assertEquals(rich.get(0), local.get("id").asText());
+
+        HttpResponse<String> production = send(2, "POST", "/kingdoms/production", null);
+        assertEquals(200, production.statusCode());
+        assertEquals(listed.size(), objectMapper.readTree(production.body()).get("processed").asInt());
+        assertEquals(80, objectMapper.readTree(send(0, "GET", "/kingdoms/" + richest, null).body()).get("gold").asInt());
+    }
+
+    private static JsonNode create(int node, int gold, int citizens, int food) throws Exception {
+        HttpResponse<String> response = send(node, "POST", "/kingdoms",
+                "{\"gold\":" + gold + ",\"citizens\":" + citizens + ",\"food\":" + food + "}");
+        assertEquals(201, response.statusCode());
+        return objectMapper.readTree(response.body());
+    }
+
+    private static HttpResponse<String> send(int node, String method, String path, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(nodes.get(node) + path))
+                .header("Content-Type", "application/json")
+                .method(method, body != null ? HttpRequest.BodyPublishers.ofString(body) : HttpRequest.BodyPublishers.noBody())
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static List<String> ids(JsonNode kingdoms) {
+        List<String> ids = new ArrayList<>();
+        kingdoms.forEach(kingdom -> ids.add(kingdom.get("id").asText()));
+        return ids;
+    }
+
+    private static String readId(String kingdom) {
+        try {
+            return objectMapper.readTree(kingdom).get("id").asText();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
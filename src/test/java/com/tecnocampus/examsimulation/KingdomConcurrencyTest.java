@@ -0,0 +1,69 @@
+package com.tecnocampus.examsimulation;
+
+import com.tecnocampus.examsimulation.api.application.KingdomRepository;
+import com.tecnocampus.examsimulation.api.application.KingdomService;
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+public class KingdomConcurrencyTest {
+
+    private static final int KINGDOMS = 20;
+    private static final int ATTACKS = 4000;
+    private static final int THREADS = 16;
+
+    @Autowired
+    private KingdomService kingdomService;
+
+    @Autowired
+    private KingdomRepository kingdomRepository;
+
+    @Test
+    public void testParallelAttacksConserveGold() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < KINGDOMS; i++) {
+            ids.add(kingdomService.createKingdom(new Kingdom(i % 60, 1 + i % 30, 10)).getId());
+        }
+        long goldBefore = totalGold(ids);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Kingdom>> attacks = new ArrayList<>();
+            Random random = new Random(42);
+            for (int i = 0; i < ATTACKS; i++) {
+                // Small world so that A->B and B->A attacks constantly overlap
+                String attackerId = ids.get(random.nextInt(KINGDOMS));
+                String targetId = ids.get(random.nextInt(KINGDOMS));
+                if (!attackerId.equals(targetId)) {
+                    attacks.add(executor.submit(() -> kingdomService.attack(attackerId, targetId)));
+                }
+            }
+            for (Future<Kingdom> attack : attacks) {
+                attack.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(goldBefore, totalGold(ids));
+    }
+
+    private long totalGold(List<String> ids) {
+        long gold = 0;
+        for (String id : ids) {
+            gold += kingdomRepository.findById(id).orElseThrow().getGold();
+        }
+        return gold;
+    }
+}
@@ -0,0 +1,130 @@
+package com.tecnocampus.examsimulation;
+
+import com.tecnocampus.examsimulation.api.application.ColumnarKingdomRepository;
+import com.tecnocampus.examsimulation.api.application.KingdomIds;
+import com.tecnocampus.examsimulation.api.application.KingdomJournal;
+import com.tecnocampus.examsimulation.api.application.KingdomRing;
+import com.tecnocampus.examsimulation.api.application.KingdomWriteBehind;
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KingdomJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRecoverFromLog() throws Exception {
+        KingdomJournal journal = new KingdomJournal(directory, Duration.ofHours(1));
+        ColumnarKingdomRepository repository = open(journal);
+        Kingdom rich = repository.save(kingdom(40, 5, 10));
+        Kingdom starving = repository.save(kingdom(10, 0, 10));
+        Kingdom deleted = repository.save(kingdom(1, 1, 1));
+        repository.investInFood(rich.getId(), 10);
+        repository.delete(deleted.getId());
+        // Replayed on a later day, it must still settle the kingdoms on the day it ran
+        LocalDate productionDay = LocalDate.of(2030, 1, 1);
+        repository.applyDailyProductionToAll(productionDay);
+        List<Kingdom> before = sorted(repository.findAll());
+        journal.close();
+
+        KingdomJournal reopened = new KingdomJournal(directory, Duration.ofHours(1));
+        List<Kingdom> after = sorted(open(reopened).findAll());
+        reopened.close();
+
+        assertEquals(1, after.size());
+        assertEquals(rich.getId(), after.get(0).getId());
+        assertEquals(productionDay, after.get(0).getLastSettled());
+        assertFalse(after.stream().anyMatch(kingdom -> kingdom.getId().equals(starving.getId())));
+        assertSame(before, after);
+    }
+
+    @Test
+    public void testRecoverFromSnapshotAndTornTail() throws Exception {
+        KingdomJournal journal = new KingdomJournal(directory, Duration.ofMillis(50));
+        ColumnarKingdomRepository repository = open(journal);
+        for (int i = 0; i < 100; i++) {
+            repository.save(kingdom(i % 60, 1 + i % 30, 10));
+        }
+        awaitSnapshot();
+        Kingdom last = repository.save(kingdom(7, 7, 7));
+        repository.produce(last.getId(), LocalDate.now());
+        List<Kingdom> before = sorted(repository.findAll());
+        journal.close();
+
+        // A record cut short by a crash while it was being written
+        try (Stream<Path> segments = Files.list(directory)) {
+            Path newest = segments.filter(file -> file.getFileName().toString().startsWith("wal-"))
+                    .max(Comparator.comparingLong(file -> Long.parseLong(file.getFileName().toString().replaceAll("\\D", ""))))
+                    .orElseThrow();
+            Files.write(newest, new byte[]{0, 0, 0, 36, 1, 2, 3}, StandardOpenOption.APPEND);
+        }
+
+        KingdomJournal reopened = new KingdomJournal(directory, Duration.ofHours(1));
+        List<Kingdom> after = sorted(open(reopened).findAll());
+        reopened.close();
+
+        assertEquals(101, after.size());
+        assertSame(before, after);
+    }
+
+    private void awaitSnapshot() throws InterruptedException, IOException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline) {
+            try (Stream<Path> files = Files.list(directory)) {
+                if (files.anyMatch(file -> file.getFileName().toString().endsWith(".bin"))) {
+                    return;
+                }
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("No snapshot was written");
+    }
+
+    private static ColumnarKingdomRepository open(KingdomJournal journal) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("kingdomJournal", journal));
+        ColumnarKingdomRepository repository = new ColumnarKingdomRepository(beans.getBeanProvider(KingdomJournal.class),
+                beans.getBeanProvider(KingdomWriteBehind.class), new KingdomIds(beans.getBeanProvider(KingdomRing.class)));
+        repository.recover();
+        return repository;
+    }
+
+    private static Kingdom kingdom(int gold, int citizens, int food) {
+        Kingdom kingdom = new Kingdom(gold, citizens, food);
+        kingdom.setDateOfCreation(LocalDate.now());
+        return kingdom;
+    }
+
+    private static List<Kingdom> sorted(List<Kingdom> kingdoms) {
+        return kingdoms.stream().sorted(Comparator.comparing(Kingdom::getId)).toList();
+    }
+
+    private static void assertSame(List<Kingdom> expected, List<Kingdom> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Kingdom a = expected.get(i);
+            Kingdom b = actual.get(i);
+            assertTrue(a.getId().equals(b.getId()) && a.getGold() == b.getGold()
+                    && a.getCitizens() == b.getCitizens() && a.getFood() == b.getFood()
+                    && a.getDateOfCreation().equals(b.getDateOfCreation()) && a.getVersion().equals(b.getVersion()),
+                    "Kingdom " + a.getId() + " differs after recovery");
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.tecnocampus.examsimulation;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Lazy production settles the days of a test clock, so it gets its own database.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:lazy-production;DB_CLOSE_DELAY=-1",
+        "kingdom.production.mode=lazy"
+})
+public class KingdomLazyProductionTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TestClock clock;
+
+    @Test
+    public void testReadSettlesElapsedDaysOnce() throws Exception {
+        String id = create("{\"gold\":10,\"citizens\":4,\"food\":10}");
+        clock.advanceDays(2);
+
+        mockMvc.perform(get("/kingdoms/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gold").value(26))
+                .andExpect(jsonPath("$.citizens").value(4))
+                .andExpect(jsonPath("$.food").value(2))
+                .andExpect(jsonPath("$.version").value(1));
+
+        // Settled for today, so reading again changes nothing
+        mockMvc.perform(get("/kingdoms/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gold").value(26))
+                .andExpect(jsonPath("$.version").value(1));
+    }
+
+    @Test
+    public void testStarvedKingdomIsDeletedWhenSettled() throws Exception {
+        String id = create("{\"gold\":0,\"citizens\":4,\"food\":4}");
+        clock.advanceDays(1);
+
+        mockMvc.perform(get("/kingdoms/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gold").value(8))
+                .andExpect(jsonPath("$.food").value(0));
+
+        clock.advanceDays(1);
+        mockMvc.perform(post("/kingdoms/" + id))
+                .andExpect(status().isNotAcceptable());
+        mockMvc.perform(get("/kingdoms/" + id))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testInvestmentSpendsSettledGold() throws Exception {
+        String id = create("{\"gold\":10,\"citizens\":4,\"food\":10}");
+        clock.advanceDays(1);
+
+        mockMvc.perform(post("/kingdoms/" + id + "/invest?type=food")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":15}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gold").value(3))
+                .andExpect(jsonPath("$.food").value(36));
+    }
+
+    @Test
+    public void testWorldProductionSettlesOnlyDueKingdoms() throws Exception {
+        String settled = create("{\"gold\":10,\"citizens\":4,\"food\":10}");
+        String due = create("{\"gold\":10,\"citizens\":4,\"food\":10}");
+        clock.advanceDays(1);
+        mockMvc.perform(get("/kingdoms/" + settled)).andExpect(status().isOk());
+
+        mockMvc.perform(post("/kingdoms/production"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/kingdoms/" + due))
+                .andExpect(jsonPath("$.gold").value(18))
+                .andExpect(jsonPath("$.version").value(1));
+        mockMvc.perform(get("/kingdoms/" + settled))
+                .andExpect(jsonPath("$.gold").value(18))
+                .andExpect(jsonPath("$.version").value(1));
+
+        mockMvc.perform(post("/kingdoms/production"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.processed").value(0));
+    }
+
+    private String create(String body) throws Exception {
+        String response = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.id").toString();
+    }
+
+    @TestConfiguration
+    static class ClockConfiguration {
+        @Bean
+        TestClock clock() {
+            return new TestClock();
+        }
+    }
+
+    /**
+     * A clock the tests move forward by whole days.
+     */
+    static class TestClock extends Clock {
+        private volatile Instant now = Instant.parse("2030-01-01T12:00:00Z");
+
+        void advanceDays(int days) {
+            now = now.plus(Duration.ofDays(days));
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.tecnocampus.examsimulation;
+
+import com.tecnocampus.examsimulation.api.application.KingdomLeaderboard;
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KingdomLeaderboardTest {
+
+    @Test
+    public void testOlderVersionsAreIgnored() {
+        KingdomLeaderboard leaderboard = new KingdomLeaderboard(Duration.ofHours(1));
+        leaderboard.update(kingdom("a", 30, 2));
+        leaderboard.update(kingdom("b", 20, 0));
+
+        // Published late, after version 2
+        leaderboard.update(kingdom("a", 10, 1));
+        assertEquals(List.of("a", "b"), ids(leaderboard.top(10)));
+        assertEquals(30, leaderboard.top(1).get(0).getGold());
+
+        leaderboard.update(kingdom("b", 40, 1));
+        assertEquals(List.of("b", "a"), ids(leaderboard.top(10)));
+        assertEquals(2, leaderboard.size());
+    }
+
+    @Test
+    public void testDeletedKingdomsStayDeletedDuringTheGrace() {
+        KingdomLeaderboard leaderboard = new KingdomLeaderboard(Duration.ofHours(1));
+        leaderboard.update(kingdom("a", 30, 0));
+        leaderboard.update(kingdom("b", 20, 0));
+
+        leaderboard.remove("a");
+        leaderboard.update(kingdom("a", 30, 1));
+        assertEquals(List.of("b"), ids(leaderboard.top(10)));
+        assertEquals("b", leaderboard.richest().orElseThrow().getId());
+    }
+
+    @Test
+    public void testTombstonesExpireAfterTheGrace() {
+        KingdomLeaderboard leaderboard = new KingdomLeaderboard(Duration.ZERO);
+        leaderboard.update(kingdom("a", 30, 0));
+
+        // Expired as soon as it is written, so the id is forgotten
+        leaderboard.remove("a");
+        leaderboard.update(kingdom("a", 30, 0));
+        assertEquals(List.of("a"), ids(leaderboard.top(10)));
+    }
+
+    @Test
+    public void testTombstonesOutliveReloads() {
+        KingdomLeaderboard leaderboard = new KingdomLeaderboard(Duration.ZERO);
+        leaderboard.update(kingdom("a", 30, 0));
+
+        // The reload read the kingdom before it was deleted, and hands it over after
+        leaderboard.reload(consumer -> {
+            leaderboard.remove("a");
+            leaderboard.remove("b");
+            consumer.accept(kingdom("a", 30, 0));
+        });
+        assertTrue(leaderboard.top(10).isEmpty());
+
+        // Expired once the reload is over
+        leaderboard.update(kingdom("a", 30, 0));
+        assertEquals(List.of("a"), ids(leaderboard.top(10)));
+    }
+
+    private static Kingdom kingdom(String id, int gold, long version) {
+        LocalDate today = LocalDate.now();
+        return new Kingdom(id, gold, 5, 5, today, today, version);
+    }
+
+    private static List<String> ids(List<Kingdom> kingdoms) {
+        return kingdoms.stream().map(Kingdom::getId).toList();
+    }
+}
@@ -0,0 +1,131 @@
+package com.tecnocampus.examsimulation;
+
+import com.tecnocampus.examsimulation.api.application.KingdomLocks;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KingdomLocksTest {
+    private static final int ROUNDS = 20;
+    private static final long WORK_MILLIS = 5;
+
+    @Test
+    public void testDisjointKingdomsScaleWithThreads() throws Exception {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        KingdomLocks locks = new KingdomLocks(1 << 16, meterRegistry);
+
+        long single = elapsedMillis(locks, 1);
+        long parallel = elapsedMillis(locks, 8);
+
+        // Serialized, 8 threads would take 8 times as long; leave room for scheduling noise
+        assertTrue(parallel < 2 * single, "1 thread: " + single + " ms, 8 threads: " + parallel + " ms");
+        assertEquals(0, meterRegistry.get("kingdom.locks.acquisitions").tag("result", "contended").counter().count());
+        assertEquals(9 * ROUNDS, meterRegistry.get("kingdom.locks.acquisitions").tag("result", "uncontended").counter().count());
+    }
+
+    @Test
+    public void testSameKingdomIsSerializedAndCounted() throws Exception {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        KingdomLocks locks = new KingdomLocks(1024, meterRegistry);
+        int[] counter = new int[1];
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        locks.withLock("kingdom", () -> counter[0]++);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(40_000, counter[0]);
+        double contended = meterRegistry.get("kingdom.locks.acquisitions").tag("result", "contended").counter().count();
+        assertEquals(contended, meterRegistry.get("kingdom.locks.wait").timer().count());
+    }
+
+    @Test
+    public void testOppositeAttacksDoNotDeadlock() {
+        KingdomLocks locks = new KingdomLocks(1024, new SimpleMeterRegistry());
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                Future<?> forward = executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        locks.withLocks("kingdom-a", "kingdom-b", () -> null);
+                    }
+                });
+                Future<?> backward = executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        locks.withLocks(List.of("kingdom-b", "kingdom-a"), () -> null);
+                    }
+                });
+                forward.get();
+                backward.get();
+            } finally {
+                executor.shutdown();
+            }
+        });
+    }
+
+    /**
+     * Time for {@code threads} threads to each run {@value #ROUNDS} operations of
+     * {@value #WORK_MILLIS} ms on their own kingdom.
+     */
+    private static long elapsedMillis(KingdomLocks locks, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String id = "kingdom-" + t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < ROUNDS; i++) {
+                        locks.withLock(id, () -> {
+                            sleep(WORK_MILLIS);
+                            return null;
+                        });
+                    }
+                    return null;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return (System.nanoTime() - begin) / 1_000_000;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
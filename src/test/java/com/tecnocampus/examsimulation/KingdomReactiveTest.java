@@ -0,0 +1,174 @@
+package com.tecnocampus.examsimulation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The reactive variant of the API answers the routes of {@link KingdomTest} with the same status codes.
+ */
+@SpringBootTest(properties = {
+        "spring.main.web-application-type=reactive",
+        "kingdom.reactive.url=r2dbc:h2:mem:///reactive-test;DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureWebTestClient
+public class KingdomReactiveTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    public void testCreateAndGetKingdom() {
+        String id = create(60, 10, 10);
+
+        webTestClient.get().uri("/kingdoms/" + id)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.gold").isEqualTo(60)
+                .jsonPath("$.citizens").isEqualTo(10)
+                .jsonPath("$.food").isEqualTo(10)
+                .jsonPath("$.dateOfCreation").exists();
+
+        webTestClient.get().uri("/kingdoms/00000000-0000-0000-0000-000000000000")
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.get().uri("/kingdoms/not-a-uuid")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void testCreateKingdomWithInvalidParams() {
+        webTestClient.post().uri("/kingdoms")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"gold\":-1,\"citizens\":30,\"food\":25}")
+                .exchange()
+                .expectStatus().isEqualTo(406);
+    }
+
+    @Test
+    public void testDailyProductionDeletesStarvingKingdom() {
+        String id = create(0, 5, 3);
+
+        webTestClient.post().uri("/kingdoms/" + id)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.gold").isEqualTo(6)
+                .jsonPath("$.citizens").isEqualTo(3)
+                .jsonPath("$.food").isEqualTo(0);
+
+        webTestClient.post().uri("/kingdoms/" + id)
+                .exchange()
+                .expectStatus().isEqualTo(406);
+        webTestClient.get().uri("/kingdoms/" + id)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void testInvest() {
+        String id = create(30, 10, 10);
+
+        webTestClient.post().uri("/kingdoms/" + id + "/invest?type=citizens")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"gold\":10}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.gold").isEqualTo(20)
+                .jsonPath("$.citizens").isEqualTo(20);
+
+        webTestClient.post().uri("/kingdoms/" + id + "/invest?type=food")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"gold\":50}")
+                .exchange()
+                .expectStatus().isEqualTo(406);
+        webTestClient.post().uri("/kingdoms/" + id + "/invest?type=invalid")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"gold\":5}")
+                .exchange()
+                .expectStatus().isEqualTo(406);
+    }
+
+    @Test
+    public void testAttack() {
+        String attacker = create(10, 20, 10);
+        String target = create(25, 4, 10);
+
+        webTestClient.post().uri("/kingdoms/" + attacker + "/attack/" + target)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.gold").isEqualTo(35)
+                .jsonPath("$.citizens").isEqualTo(22);
+        webTestClient.get().uri("/kingdoms/" + target)
+                .exchange()
+                .expectBody()
+                .jsonPath("$.gold").isEqualTo(0)
+                .jsonPath("$.citizens").isEqualTo(2);
+
+        webTestClient.post().uri("/kingdoms/" + attacker + "/attack/" + attacker)
+                .exchange()
+                .expectStatus().isEqualTo(406);
+        webTestClient.post().uri("/kingdoms/" + attacker + "/attack/00000000-0000-0000-0000-000000000000")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void testListsAndExport() {
+        String first = create(1, 1, 1);
+        create(2, 2, 2);
+
+        List<JsonNode> page = webTestClient.get().uri("/kingdoms?limit=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(JsonNode.class)
+                .returnResult().getResponseBody();
+        assertEquals(1, page.size());
+        webTestClient.get().uri("/kingdoms?limit=0")
+                .exchange()
+                .expectStatus().isEqualTo(406);
+
+        webTestClient.get().uri("/kingdoms/top?n=0")
+                .exchange()
+                .expectStatus().isEqualTo(406);
+        webTestClient.get().uri("/kingdoms/top?n=1001")
+                .exchange()
+                .expectStatus().isEqualTo(406);
+        webTestClient.get().uri("/kingdoms/richest")
+                .exchange()
+                .expectStatus().isOk();
+
+        List<JsonNode> exported = webTestClient.get().uri("/kingdoms/export")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(JsonNode.class).getResponseBody()
+                .collectList().block();
+        assertTrue(exported.stream().anyMatch(kingdom -> kingdom.get("id").asText().equals(first)));
+    }
+
+    private String create(int gold, int citizens, int food) {
+        JsonNode created = webTestClient.post().uri("/kingdoms")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"gold\":" + gold + ",\"citizens\":" + citizens + ",\"food\":" + food + "}")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(JsonNode.class)
+                .returnResult().getResponseBody();
+        return created.get("id").asText();
+    }
+}
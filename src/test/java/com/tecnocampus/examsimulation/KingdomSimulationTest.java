@@ -0,0 +1,108 @@
+package com.tecnocampus.examsimulation;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Simulation runs production for the whole world, so it gets its own database.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:simulation;DB_CLOSE_DELAY=-1")
+public class KingdomSimulationTest {
+
+    private static final int KINGDOMS = 50;
+    private static final int DAYS = 6;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testSimulateMatchesDailyProduction() throws Exception {
+        Random random = new Random(42);
+        List<String> ids = new ArrayList<>();
+        List<String> twins = new ArrayList<>();
+        for (int i = 0; i < KINGDOMS; i++) {
+            String body = "{\"gold\":" + random.nextInt(61) + ",\"citizens\":" + random.nextInt(61)
+                    + ",\"food\":" + random.nextInt(61) + "}";
+            ids.add(create(body));
+            twins.add(create(body));
+        }
+
+        // Twins go through the single-kingdom path day by day
+        List<String> expected = new ArrayList<>();
+        for (String twin : twins) {
+            String state = null;
+            for (int day = 0; day < DAYS; day++) {
+                int status = mockMvc.perform(post("/kingdoms/" + twin)).andReturn().getResponse().getStatus();
+                if (status == 406) {
+                    state = null;
+                    break;
+                }
+                state = mockMvc.perform(get("/kingdoms/" + twin)).andReturn().getResponse().getContentAsString();
+            }
+            expected.add(state == null ? null : resources(state));
+        }
+
+        String dryRun = mockMvc.perform(post("/kingdoms/simulate?days=" + DAYS + "&dryRun=true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.dryRun").value(true))
+                .andExpect(jsonPath("$.kingdoms").isArray())
+                .andReturn().getResponse().getContentAsString();
+        mockMvc.perform(get("/kingdoms/" + ids.get(0)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(0));
+
+        mockMvc.perform(post("/kingdoms/simulate?days=" + DAYS))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.dryRun").value(false))
+                .andExpect(jsonPath("$.processed").value(greaterThanOrEqualTo(KINGDOMS)))
+                .andExpect(jsonPath("$.goldMinted").value((Object) JsonPath.read(dryRun, "$.goldMinted")));
+
+        for (int i = 0; i < KINGDOMS; i++) {
+            var response = mockMvc.perform(get("/kingdoms/" + ids.get(i))).andReturn().getResponse();
+            if (expected.get(i) == null) {
+                assertEquals(404, response.getStatus(), "Kingdom " + i + " should have been deleted");
+            } else {
+                assertEquals(expected.get(i), resources(response.getContentAsString()), "Kingdom " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testSimulateWithInvalidDays() throws Exception {
+        mockMvc.perform(post("/kingdoms/simulate?days=0"))
+                .andExpect(status().isNotAcceptable());
+    }
+
+    private String create(String body) throws Exception {
+        String response = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.id").toString();
+    }
+
+    private static String resources(String kingdom) {
+        return JsonPath.read(kingdom, "$.gold") + "/" + JsonPath.read(kingdom, "$.citizens") + "/"
+                + JsonPath.read(kingdom, "$.food");
+    }
+}
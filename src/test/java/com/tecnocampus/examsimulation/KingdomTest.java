@@ -1,17 +1,33 @@
 package com.tecnocampus.examsimulation;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import com.jayway.jsonpath.JsonPath;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 
@@ -22,6 +38,9 @@ public class KingdomTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Test
     public void testCreateKingdom() throws Exception {
         mockMvc.perform(post("/kingdoms")
@@ -35,6 +54,37 @@ public class KingdomTest {
                 .andExpect(jsonPath("$.food").value(10));
     }
 
+    @Test
+    public void testCreateKingdomIgnoresIdAndVersion() throws Exception {
+        MvcResult existing = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":10,\"citizens\":10,\"food\":10}"))
+                .andExpect(status().isCreated())
+                .andReturn();
+        String id = JsonPath.read(existing.getResponse().getContentAsString(), "$.id").toString();
+        String body = "{\"id\":\"" + id + "\",\"version\":0,\"lastSettled\":\"2000-01-01\","
+                + "\"gold\":60,\"citizens\":1,\"food\":1}";
+
+        mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value(not(id)))
+                .andExpect(jsonPath("$.version").value(0))
+                .andExpect(jsonPath("$.lastSettled").value(not("2000-01-01")));
+        mockMvc.perform(post("/kingdoms/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + body + "]"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.created").value(1))
+                .andExpect(jsonPath("$.ids[0]").value(not(id)));
+
+        mockMvc.perform(get("/kingdoms/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gold").value(10))
+                .andExpect(jsonPath("$.version").value(0));
+    }
+
     @Test
     public void testCreateKingdomWithInvalidParams() throws Exception {
         mockMvc.perform(post("/kingdoms")
@@ -44,6 +94,47 @@ public class KingdomTest {
     }
 
 
+    @Test
+    public void testCreateKingdomsBatch() throws Exception {
+        mockMvc.perform(post("/kingdoms/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"gold\":10,\"citizens\":10,\"food\":10},"
+                                + "{\"gold\":-1,\"citizens\":10,\"food\":10},"
+                                + "{\"gold\":20,\"citizens\":5,\"food\":5}]"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.created").value(2))
+                .andExpect(jsonPath("$.failed").value(1))
+                .andExpect(jsonPath("$.failures[0].index").value(1));
+
+        mockMvc.perform(post("/kingdoms/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"gold\":10,\"citizens\":10,\"food\":10}\n"
+                                + "{\"gold\":\"lots\",\"citizens\":10,\"food\":10}\n"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.created").value(1))
+                .andExpect(jsonPath("$.failures[0].index").value(1));
+    }
+
+    @Test
+    public void testCreateKingdomsBatchWithMalformedJson() throws Exception {
+        String response = mockMvc.perform(post("/kingdoms/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"gold\":10,\"citizens\":10,\"food\":10}\n"
+                                + "{\"gold\":20,\"citizens\":5,\"food\":5}\n"
+                                + "{\"gold\":30,\"citizens\n"
+                                + "{\"gold\":40,\"citizens\":5,\"food\":5}\n"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.created").value(2))
+                .andExpect(jsonPath("$.ids.length()").value(2))
+                .andExpect(jsonPath("$.failures[0].index").value(2))
+                .andExpect(jsonPath("$.failures[0].error").value(containsString("Malformed JSON")))
+                .andReturn().getResponse().getContentAsString();
+
+        mockMvc.perform(get("/kingdoms/" + JsonPath.read(response, "$.ids[1]")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gold").value(20));
+    }
+
     @Test
     public void testStartProduction() throws Exception {
         MvcResult result = mockMvc.perform(post("/kingdoms")
@@ -99,6 +190,57 @@ public class KingdomTest {
     }
 
 
+    // A new, empty database, so the report only counts the kingdoms created here
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void testStartWorldProduction() throws Exception {
+        MvcResult fedResult = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":10,\"citizens\":5,\"food\":10}"))
+                .andExpect(status().isCreated())
+                .andReturn();
+
+        String fedId = JsonPath.read(fedResult.getResponse().getContentAsString(), "$.id").toString();
+
+        MvcResult hungryResult = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":10,\"citizens\":10,\"food\":5}"))
+                .andExpect(status().isCreated())
+                .andReturn();
+
+        String hungryId = JsonPath.read(hungryResult.getResponse().getContentAsString(), "$.id").toString();
+
+        MvcResult starvedResult = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":10,\"citizens\":2,\"food\":0}"))
+                .andExpect(status().isCreated())
+                .andReturn();
+
+        String starvedId = JsonPath.read(starvedResult.getResponse().getContentAsString(), "$.id").toString();
+
+        mockMvc.perform(post("/kingdoms/production"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.processed").value(3))
+                .andExpect(jsonPath("$.starved").value(1))
+                .andExpect(jsonPath("$.deleted").value(1))
+                .andExpect(jsonPath("$.goldMinted").value(20));
+
+        mockMvc.perform(get("/kingdoms/" + fedId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gold").value(20))
+                .andExpect(jsonPath("$.citizens").value(5))
+                .andExpect(jsonPath("$.food").value(5));
+
+        mockMvc.perform(get("/kingdoms/" + hungryId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gold").value(20))
+                .andExpect(jsonPath("$.citizens").value(5))
+                .andExpect(jsonPath("$.food").value(0));
+
+        mockMvc.perform(get("/kingdoms/" + starvedId))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void testInvestFood() throws Exception {
         MvcResult result = mockMvc.perform(post("/kingdoms")
@@ -117,6 +259,80 @@ public class KingdomTest {
                 .andExpect(jsonPath("$.food").value(15));
     }
 
+    @Test
+    public void testInvestWithIdempotencyKey() throws Exception {
+        MvcResult result = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":10,\"citizens\":5,\"food\":5}"))
+                .andExpect(status().isCreated())
+                .andReturn();
+
+        String kingdomId = JsonPath.read(result.getResponse().getContentAsString(), "$.id").toString();
+        String key = UUID.randomUUID().toString();
+
+        mockMvc.perform(post("/kingdoms/" + kingdomId + "/invest?type=food")
+                        .header("Idempotency-Key", key)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":5}"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"))
+                .andExpect(jsonPath("$.gold").value(5));
+
+        mockMvc.perform(post("/kingdoms/" + kingdomId + "/invest?type=food")
+                        .header("Idempotency-Key", key)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":5}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.gold").value(5))
+                .andExpect(jsonPath("$.food").value(15));
+
+        mockMvc.perform(post("/kingdoms/" + kingdomId + "/invest?type=food")
+                        .header("Idempotency-Key", key)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":1}"))
+                .andExpect(status().isUnprocessableEntity());
+
+        mockMvc.perform(get("/kingdoms/" + kingdomId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gold").value(5))
+                .andExpect(jsonPath("$.food").value(15));
+    }
+
+    @Test
+    public void testIdempotencyKeyIsBoundToTheBody() throws Exception {
+        String batchKey = UUID.randomUUID().toString();
+        String batch = "[{\"gold\":10,\"citizens\":10,\"food\":10}]";
+        mockMvc.perform(post("/kingdoms/batch")
+                        .header("Idempotency-Key", batchKey)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(batch))
+                .andExpect(status().isCreated());
+        mockMvc.perform(post("/kingdoms/batch")
+                        .header("Idempotency-Key", batchKey)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(batch))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "true"));
+        mockMvc.perform(post("/kingdoms/batch")
+                        .header("Idempotency-Key", batchKey)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"gold\":20,\"citizens\":10,\"food\":10}]"))
+                .andExpect(status().isUnprocessableEntity());
+
+        String tournamentKey = UUID.randomUUID().toString();
+        mockMvc.perform(post("/kingdoms/tournament")
+                        .header("Idempotency-Key", tournamentKey)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"attackerId\":\"a\",\"targetId\":\"b\"}]"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/kingdoms/tournament")
+                        .header("Idempotency-Key", tournamentKey)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"attackerId\":\"b\",\"targetId\":\"a\"}]"))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
     @Test
     public void testInvestFoodWithoutEnoughGold() throws Exception {
         MvcResult result = mockMvc.perform(post("/kingdoms")
@@ -183,6 +399,40 @@ public class KingdomTest {
                 .andExpect(status().isNotAcceptable());
     }
 
+    @Test
+    public void testInvestTypeIgnoresCase() throws Exception {
+        MvcResult result = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":10,\"citizens\":5,\"food\":5}"))
+                .andExpect(status().isCreated())
+                .andReturn();
+
+        String kingdomId = JsonPath.read(result.getResponse().getContentAsString(), "$.id").toString();
+
+        mockMvc.perform(post("/kingdoms/" + kingdomId + "/invest?type=Citizens")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":5}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gold").value(5))
+                .andExpect(jsonPath("$.citizens").value(10));
+        // Timed like Micrometer's TimedAspect would
+        assertNotNull(meterRegistry.find("kingdom.service")
+                .tags("method", "invest", "exception", "none")
+                .timer());
+    }
+
+    @Test
+    public void testCreateKingdomWithMissingOrNullParams() throws Exception {
+        mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":10,\"citizens\":5}"))
+                .andExpect(status().is4xxClientError());
+        mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":null,\"citizens\":5,\"food\":5}"))
+                .andExpect(status().is4xxClientError());
+    }
+
     @Test
     public void testGetKingdom() throws Exception {
         MvcResult result = mockMvc.perform(post("/kingdoms")
@@ -203,6 +453,67 @@ public class KingdomTest {
     }
 
 
+    @Test
+    public void testGetKingdomAsCbor() throws Exception {
+        MvcResult result = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":12,\"citizens\":7,\"food\":3}"))
+                .andExpect(status().isCreated())
+                .andReturn();
+
+        String kingdomId = JsonPath.read(result.getResponse().getContentAsString(), "$.id").toString();
+
+        mockMvc.perform(get("/kingdoms/" + kingdomId))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+
+        byte[] cbor = mockMvc.perform(get("/kingdoms/" + kingdomId).accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode kingdom = new CBORMapper().readTree(cbor);
+        assertEquals(kingdomId, kingdom.get("id").asText());
+        assertEquals(12, kingdom.get("gold").asInt());
+        assertEquals(7, kingdom.get("citizens").asInt());
+        assertEquals(3, kingdom.get("food").asInt());
+    }
+
+    @Test
+    public void testWatchKingdom() throws Exception {
+        MvcResult result = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":10,\"citizens\":5,\"food\":5}"))
+                .andExpect(status().isCreated())
+                .andReturn();
+
+        String kingdomId = JsonPath.read(result.getResponse().getContentAsString(), "$.id").toString();
+
+        MvcResult events = mockMvc.perform(get("/kingdoms/" + kingdomId + "/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        awaitContent(events, "\"gold\":10");
+
+        mockMvc.perform(post("/kingdoms/" + kingdomId + "/invest?type=food")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":4}"))
+                .andExpect(status().isOk());
+        awaitContent(events, "\"gold\":6");
+
+        mockMvc.perform(get("/kingdoms/nonexistent-id/events"))
+                .andExpect(status().isNotFound());
+    }
+
+    private static void awaitContent(MvcResult result, String expected) throws Exception {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!result.getResponse().getContentAsString().contains(expected)) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("No event with " + expected + " in " + result.getResponse().getContentAsString());
+            }
+            Thread.sleep(10);
+        }
+    }
+
     @Test
     public void testGetInvalidKingdom() throws Exception {
         MvcResult result = mockMvc.perform(post("/kingdoms")
@@ -219,6 +530,55 @@ public class KingdomTest {
     }
 
 
+    @Test
+    public void testGetKingdomsPage() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(post("/kingdoms")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"gold\":10,\"citizens\":10,\"food\":10}"))
+                    .andExpect(status().isCreated());
+        }
+
+        MvcResult firstPage = mockMvc.perform(get("/kingdoms?limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andReturn();
+
+        String lastId = JsonPath.read(firstPage.getResponse().getContentAsString(), "$[1].id").toString();
+
+        mockMvc.perform(get("/kingdoms?limit=2&after=" + lastId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(greaterThan(lastId)));
+
+        mockMvc.perform(get("/kingdoms?limit=2&after=not-a-kingdom"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+
+        mockMvc.perform(get("/kingdoms?limit=0"))
+                .andExpect(status().isNotAcceptable());
+    }
+
+    @Test
+    public void testExportKingdoms() throws Exception {
+        MvcResult result = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":10,\"citizens\":10,\"food\":10}"))
+                .andExpect(status().isCreated())
+                .andReturn();
+
+        String kingdomId = JsonPath.read(result.getResponse().getContentAsString(), "$.id").toString();
+
+        MvcResult export = mockMvc.perform(get("/kingdoms/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(export))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(containsString("\"id\":\"" + kingdomId + "\"")));
+    }
+
+
     @Test
     public void testGetRichestKingdom() throws Exception {
         mockMvc.perform(post("/kingdoms")
@@ -240,6 +600,44 @@ public class KingdomTest {
     }
 
 
+    // A new, empty database, so the ranking only holds the kingdoms created here
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void testGetTopKingdoms() throws Exception {
+        String invested = create("{\"gold\":40,\"citizens\":20,\"food\":30}");
+        String defender = create("{\"gold\":45,\"citizens\":15,\"food\":25}");
+        String attacker = create("{\"gold\":30,\"citizens\":5,\"food\":20}");
+        String starving = create("{\"gold\":50,\"citizens\":1,\"food\":0}");
+        assertTop(starving, defender, invested, attacker);
+
+        mockMvc.perform(post("/kingdoms/" + invested + "/invest?type=food")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":20}"))
+                .andExpect(status().isOk());
+        assertTop(starving, defender, attacker, invested);
+
+        // The attacker loses and its gold goes to the defender
+        mockMvc.perform(post("/kingdoms/" + attacker + "/attack/" + defender))
+                .andExpect(status().isOk());
+        assertTop(defender, starving, invested, attacker);
+
+        // The kingdom without food is deleted, the others earn 2 gold per citizen fed
+        mockMvc.perform(post("/kingdoms/production"))
+                .andExpect(status().isOk());
+        assertTop(defender, invested, attacker);
+
+        mockMvc.perform(get("/kingdoms/top?n=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id").value(contains(defender, invested)));
+
+        mockMvc.perform(get("/kingdoms/top?n=0"))
+                .andExpect(status().isNotAcceptable());
+
+        mockMvc.perform(get("/kingdoms/top?n=1001"))
+                .andExpect(status().isNotAcceptable());
+    }
+
+
     @Test
     public void testAttackKingdom() throws Exception {
         MvcResult attackerResult = mockMvc.perform(post("/kingdoms")
@@ -269,6 +667,50 @@ public class KingdomTest {
                 .andExpect(jsonPath("$.citizens").value(15));
     }
 
+    @Test
+    public void testAttackTournament() throws Exception {
+        MvcResult firstResult = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":30,\"citizens\":10,\"food\":20}"))
+                .andExpect(status().isCreated())
+                .andReturn();
+
+        String firstId = JsonPath.read(firstResult.getResponse().getContentAsString(), "$.id").toString();
+
+        MvcResult secondResult = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"gold\":20,\"citizens\":10,\"food\":20}"))
+                .andExpect(status().isCreated())
+                .andReturn();
+
+        String secondId = JsonPath.read(secondResult.getResponse().getContentAsString(), "$.id").toString();
+
+        mockMvc.perform(post("/kingdoms/tournament")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"attackerId\":\"" + firstId + "\",\"targetId\":\"" + secondId + "\"},"
+                                + "{\"attackerId\":\"" + secondId + "\",\"targetId\":\"" + firstId + "\"},"
+                                + "{\"attackerId\":\"" + firstId + "\",\"targetId\":\"" + firstId + "\"},"
+                                + "{\"attackerId\":\"" + firstId + "\",\"targetId\":\"nonexistent-id\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.resolved").value(2))
+                .andExpect(jsonPath("$.failed").value(2))
+                .andExpect(jsonPath("$.battlesPerSecond").isNumber())
+                .andExpect(jsonPath("$.outcomes[0].winnerId").value(secondId))
+                .andExpect(jsonPath("$.outcomes[1].winnerId").value(secondId))
+                .andExpect(jsonPath("$.outcomes[2].error").exists())
+                .andExpect(jsonPath("$.outcomes[3].error").exists());
+
+        mockMvc.perform(get("/kingdoms/" + firstId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gold").value(0))
+                .andExpect(jsonPath("$.citizens").value(3));
+
+        mockMvc.perform(get("/kingdoms/" + secondId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gold").value(50))
+                .andExpect(jsonPath("$.citizens").value(17));
+    }
+
     @Test
     public void testAttackKingdomWithEmptyTarget() throws Exception {
         MvcResult attackerResult = mockMvc.perform(post("/kingdoms")
@@ -321,7 +763,8 @@ public class KingdomTest {
         mockMvc.perform(post("/kingdoms/" + attackerId + "/attack/" + targetId))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.gold").value(0))
-                .andExpect(jsonPath("$.citizens").value(2));
+                // The losing attacker keeps 5 - 5 / 2 citizens, the defender gains the 2 lost
+                .andExpect(jsonPath("$.citizens").value(3));
 
 
         mockMvc.perform(get("/kingdoms/" + targetId))
@@ -360,4 +803,21 @@ public class KingdomTest {
                 .andExpect(jsonPath("$.citizens").value(15));
     }
 
+    private String create(String body) throws Exception {
+        MvcResult result = mockMvc.perform(post("/kingdoms")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isCreated())
+                .andReturn();
+        return JsonPath.read(result.getResponse().getContentAsString(), "$.id").toString();
+    }
+
+    /**
+     * The leaderboard holds exactly these kingdoms, richest first.
+     */
+    private void assertTop(String... ids) throws Exception {
+        mockMvc.perform(get("/kingdoms/top?n=10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id").value(contains(ids)));
+    }
 }
@@ -0,0 +1,133 @@
+package com.tecnocampus.examsimulation;
+
+import com.tecnocampus.examsimulation.api.application.ColumnarKingdomRepository;
+import com.tecnocampus.examsimulation.api.application.KingdomIds;
+import com.tecnocampus.examsimulation.api.application.KingdomJournal;
+import com.tecnocampus.examsimulation.api.application.KingdomRing;
+import com.tecnocampus.examsimulation.api.application.KingdomWriteBehind;
+import com.tecnocampus.examsimulation.api.domain.Kingdom;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KingdomWriteBehindTest {
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void createTable() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:write-behind;DB_CLOSE_DELAY=-1");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @AfterEach
+    public void dropTable() {
+        jdbcTemplate.execute("DROP TABLE kingdoms");
+    }
+
+    @Test
+    public void testCoalescesChangesAndFlushesOnShutdown() throws Exception {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        KingdomWriteBehind writeBehind = writeBehind(Duration.ofHours(1), 1000, meterRegistry);
+        ColumnarKingdomRepository repository = open(writeBehind);
+
+        Kingdom kingdom = repository.save(kingdom(100, 5, 5));
+        for (int i = 0; i < 50; i++) {
+            repository.investInFood(kingdom.getId(), 1);
+        }
+        Kingdom removed = repository.save(kingdom(1, 1, 1));
+        repository.delete(removed.getId());
+        assertEquals(0, count(), "Nothing is written before the interval or batch size is reached");
+
+        writeBehind.close();
+
+        assertEquals(1, count());
+        Map<String, Object> row = jdbcTemplate.queryForMap("SELECT gold, food, version FROM kingdoms WHERE id = ?",
+                UUID.fromString(kingdom.getId()));
+        assertEquals(50, row.get("GOLD"));
+        assertEquals(105, row.get("FOOD"));
+        assertEquals(50L, row.get("VERSION"));
+        assertEquals(51, meterRegistry.get("kingdom.write-behind.coalesced").counter().count());
+    }
+
+    @Test
+    public void testFlushesOnBatchSizeAndReloads() throws Exception {
+        KingdomWriteBehind writeBehind = writeBehind(Duration.ofHours(1), 10, new SimpleMeterRegistry());
+        ColumnarKingdomRepository repository = open(writeBehind);
+        for (int i = 0; i < 25; i++) {
+            repository.save(kingdom(i, 1 + i, 10));
+        }
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (count() < 20) {
+            assertTrue(System.nanoTime() < deadline, "Full batches were not flushed");
+            Thread.sleep(10);
+        }
+        repository.applyDailyProductionToAll(LocalDate.now());
+        writeBehind.close();
+
+        KingdomWriteBehind reopened = writeBehind(Duration.ofHours(1), 10, new SimpleMeterRegistry());
+        ColumnarKingdomRepository reloaded = open(reopened);
+        assertEquals(25, reloaded.findAll().size());
+        for (Kingdom kingdom : repository.findAll()) {
+            Kingdom copy = reloaded.findById(kingdom.getId()).orElseThrow();
+            assertEquals(kingdom.getGold(), copy.getGold());
+            assertEquals(kingdom.getFood(), copy.getFood());
+            assertEquals(kingdom.getVersion(), copy.getVersion());
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void testCannotBeCombinedWithJournal() {
+        KingdomWriteBehind writeBehind = writeBehind(Duration.ofHours(1), 10, new SimpleMeterRegistry());
+        KingdomJournal journal = new KingdomJournal(Path.of("unused"), Duration.ofHours(1));
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(
+                Map.of("kingdomJournal", journal, "kingdomWriteBehind", writeBehind));
+        assertThrows(IllegalStateException.class, () -> new ColumnarKingdomRepository(
+                beans.getBeanProvider(KingdomJournal.class), beans.getBeanProvider(KingdomWriteBehind.class),
+                new KingdomIds(beans.getBeanProvider(KingdomRing.class))));
+    }
+
+    private KingdomWriteBehind writeBehind(Duration interval, int batchSize, MeterRegistry meterRegistry) {
+        return new KingdomWriteBehind(jdbcTemplate, new DataSourceTransactionManager(dataSource), interval, batchSize,
+                100_000, meterRegistry);
+    }
+
+    private static ColumnarKingdomRepository open(KingdomWriteBehind writeBehind) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("kingdomWriteBehind", writeBehind));
+        ColumnarKingdomRepository repository = new ColumnarKingdomRepository(beans.getBeanProvider(KingdomJournal.class),
+                beans.getBeanProvider(KingdomWriteBehind.class), new KingdomIds(beans.getBeanProvider(KingdomRing.class)));
+        repository.recover();
+        return repository;
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM kingdoms", Integer.class);
+    }
+
+    private static Kingdom kingdom(int gold, int citizens, int food) {
+        Kingdom kingdom = new Kingdom(gold, citizens, food);
+        kingdom.setDateOfCreation(LocalDate.now());
+        return kingdom;
+    }
+}